@@ -2,10 +2,51 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 public class Awk {
     public static void main(String[] args) {
+        // options come before everything else
+        // --engine=interpret|compile|bytecode|stack picks how the program is run
+        // --dump-ast prints the program after it has been parsed and simplified (see
+        // ConstantFolder) instead of running it
+        // --threads=N runs the main rules of programs that dont depend on the order of
+        // there records on N threads (see ParallelRunner), by default there is just the
+        // one since records are handed out in chunks, which would hold up the output of
+        // input that comes in slowly (like from tail -f)
+        var engine = Interpreter.Engine.Interpret;
+        var dumpAst = false;
+        int threads = 1;
+        int options = 0;
+        for (; options < args.length && args[options].startsWith("--") && !args[options].equals("--"); options++) {
+            var option = args[options];
+            if (option.startsWith("--engine=")) {
+                var name = option.substring("--engine=".length());
+                engine = Arrays.stream(Interpreter.Engine.values()).filter(e -> e.name().equalsIgnoreCase(name))
+                        .findFirst().orElse(null);
+                if (engine == null) {
+                    System.err.println("Unknown engine " + name);
+                    System.exit(1);
+                }
+            } else if (option.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(option.substring("--threads=".length()));
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println("Invalid number of threads " + option.substring("--threads=".length()));
+                    System.exit(1);
+                }
+            } else if (option.equals("--dump-ast")) {
+                dumpAst = true;
+            } else {
+                System.err.println("Unknown option " + option);
+                System.exit(1);
+            }
+        }
+        args = Arrays.copyOfRange(args, options, args.length);
         // Handleing case when no awk file is specified
         if (args.length < 2) {
             System.err.println("No awk file specified");
@@ -20,8 +61,15 @@ public class Awk {
                 // print result token stream
                 LinkedList<Token> lex = lexer.lex();
                 var parser = new Parser(lex);
-                var interpreter = new Interpreter(parser.Parse(),
-                        Optional.ofNullable(args.length == 3 ? args[2] : null));
+                var program = ConstantFolder.fold(parser.Parse());
+                if (dumpAst) {
+                    System.out.println(program);
+                    return;
+                }
+                // everything after the awk file is an input file
+                var interpreter = new Interpreter(program, Arrays.asList(args).subList(2, args.length));
+                interpreter.setEngine(engine);
+                interpreter.setParallelism(threads);
                 interpreter.InterpretProgram();
             } catch (AwkException e) {
                 e.DisplayError(content, myPath.toString());
@@ -0,0 +1,311 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+// lets programs that add up (or keep the biggest or smallest of) something for
+// each record run on more than one thread (see ParallelRunner), like
+// { sum[$1] += $3; count[$1]++ } END { for (k in sum) print k, sum[k] / count[k] }
+// statements in the main rules that only update an array element (or a global)
+// with +=, -=, ++, -- or if (x > a[k]) a[k] = x (any of < <= > >=) are
+// accumulators, if nothing else in the main rules (or any function) uses that
+// array they are replaced by a call to BUILTIN, which only records the update
+// (the value and the key, working them out is most of the work), the updates are
+// then done on the real array in the same order as the records
+// the updates have to be done in order as math on doubles isnt associative
+// (adding the same numbers in a different order can round differently) and
+// comparing strings and numbers isnt transitive, but doing them is just a lookup
+// and an add or compare for each record
+// arrays get there keys in the same order as if the records were run one at a
+// time, so for in goes through them the same way
+public class Accumulators {
+    // the name the main rules call accumulators by, which cant be written in a
+    // program
+    public static final String BUILTIN = "@accumulate";
+    // variables that arent just variables (assigning to them does something)
+    private static final Set<String> SPECIAL = Set.of("NF", "NR", "FNR", "FILENAME", "FS", "OFS", "ORS", "OFMT",
+            "CONVFMT", "RSTART", "RLENGTH", "SUBSEP", "RS", "RT");
+
+    private static final Set<OperationNode.Operation> COMPARISONS = Set.of(OperationNode.Operation.LT,
+            OperationNode.Operation.LE, OperationNode.Operation.GT, OperationNode.Operation.GE);
+
+    private enum Kind {
+        // adds value times sign (-= and -- add the negative, which is the same)
+        ADD,
+        // assigns value if comparing value and the element (in the order they were in
+        // the if) is true
+        GUARD
+    }
+
+    private record Update(String name, boolean indexed, Kind kind, double sign, OperationNode.Operation comparison,
+            boolean valueFirst) {
+    }
+
+    private ProgramNode program;
+    private List<Update> updates = new ArrayList<>();
+    // accumulators that cant be (as something else uses them)
+    private Set<String> excluded;
+
+    private Accumulators(ProgramNode original, Set<String> excluded) {
+        this.excluded = excluded;
+        var rest = new LinkedList<BlockNode>();
+        for (var block : original.getRestBlocks()) {
+            rest.add(block(block));
+        }
+        program = new ProgramNode();
+        original.getFunctions().forEach(program.getFunctions()::add);
+        program.getBeginBlocks().addAll(original.getBeginBlocks());
+        program.getRestBlocks().addAll(rest);
+        program.getEndBlocks().addAll(original.getEndBlocks());
+    }
+
+    // finds the accumulators in the main rules of program, getProgram is the
+    // program with them replaced
+    public static Accumulators find(ProgramNode program) {
+        var excluded = new HashSet<>(SPECIAL);
+        for (var function : program.getFunctions()) {
+            NodeWalker.walk(function, n -> {
+                if (n instanceof VariableReferenceNode v && !function.getParameters().contains(v.getName())) {
+                    excluded.add(v.getName());
+                }
+            });
+        }
+        // anything still used in the main rules after replacing the accumulators cant
+        // be one, which means its statements arent replaced, so we go again until
+        // nothing changes
+        while (true) {
+            var accumulators = new Accumulators(program, excluded);
+            var used = new HashSet<String>();
+            var arrays = new HashMap<String, Boolean>();
+            for (var block : accumulators.program.getRestBlocks()) {
+                NodeWalker.walk(block, n -> {
+                    if (n instanceof VariableReferenceNode v) {
+                        used.add(v.getName());
+                    }
+                });
+            }
+            for (var update : accumulators.updates) {
+                // the same name as an array and a scalar is an error, which we leave for
+                // running the records one at a time
+                if (arrays.getOrDefault(update.name(), update.indexed()) != update.indexed()) {
+                    used.add(update.name());
+                }
+                arrays.put(update.name(), update.indexed());
+            }
+            if (!accumulators.names().stream().anyMatch(used::contains)) {
+                return accumulators;
+            }
+            excluded.addAll(used);
+        }
+    }
+
+    public ProgramNode getProgram() {
+        return program;
+    }
+
+    private Set<String> names() {
+        var names = new HashSet<String>();
+        updates.forEach(update -> names.add(update.name()));
+        return names;
+    }
+
+    // whether the accumulators can start from what the variables are now (things
+    // that would fail, like adding to a string, are left to when the records are
+    // run one at a time so the error happens at the right record)
+    public boolean canStart(Interpreter interpreter) {
+        for (var update : updates) {
+            var value = interpreter.findGlobal(update.name());
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof InterpreterArrayDataType array != update.indexed()) {
+                return false;
+            }
+            if (update.kind() == Kind.ADD) {
+                var values = value instanceof InterpreterArrayDataType array ? array.getItemsList() : List.of(value);
+                if (!values.stream().allMatch(InterpreterDataType::isNumber)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private BlockNode block(BlockNode block) {
+        var statements = new LinkedList<StatementNode>();
+        block.getStatements().forEach(statement -> statements.add(statement(statement)));
+        var copy = new BlockNode(statements);
+        copy.setCondition(block.getCondition());
+        return copy;
+    }
+
+    private Node node(Node node) {
+        return switch (node) {
+            case BlockNode b -> block(b);
+            case StatementNode s -> statement(s);
+            default -> node;
+        };
+    }
+
+    // the statement to run instead of statement (itself if its not an accumulator)
+    private StatementNode statement(StatementNode statement) {
+        return switch (statement) {
+            case AssignmentNode a when a.getTarget() instanceof VariableReferenceNode target
+                    && a.getExpression() instanceof OperationNode op -> {
+                var operation = op.getOperation();
+                var right = op.getRight().orElse(null);
+                if (operation == OperationNode.Operation.ADD && op.getLeft().equals(target)) {
+                    yield accumulate(target, Kind.ADD, 1, right, null, false, statement);
+                } else if (operation == OperationNode.Operation.ADD && target.equals(right)) {
+                    // adding is the same either way around
+                    yield accumulate(target, Kind.ADD, 1, op.getLeft(), null, false, statement);
+                } else if (operation == OperationNode.Operation.SUBTRACT && op.getLeft().equals(target)) {
+                    yield accumulate(target, Kind.ADD, -1, right, null, false, statement);
+                }
+                yield statement;
+            }
+            case OperationNode op when op.getLeft() instanceof VariableReferenceNode target -> switch (op
+                    .getOperation()) {
+                case PREINC, POSTINC -> accumulate(target, Kind.ADD, 1, new ConstantNode("1"), null, false, statement);
+                case PREDEC, POSTDEC -> accumulate(target, Kind.ADD, -1, new ConstantNode("1"), null, false, statement);
+                default -> statement;
+            };
+            case IfNode i -> {
+                if (i.getOtherwise().isEmpty() && i.getThenBlock().getCondition().isEmpty()
+                        && i.getThenBlock().getStatements().size() == 1
+                        && i.getThenBlock().getStatements().getFirst() instanceof AssignmentNode a
+                        && a.getTarget() instanceof VariableReferenceNode target
+                        && i.getCondition() instanceof OperationNode condition
+                        && COMPARISONS.contains(condition.getOperation()) && !callsFunction(a.getExpression())) {
+                    var value = a.getExpression();
+                    var left = condition.getLeft();
+                    var right = condition.getRight().orElse(null);
+                    if (left.equals(value) && target.equals(right)) {
+                        yield accumulate(target, Kind.GUARD, 1, value, condition.getOperation(), true, statement);
+                    } else if (left.equals(target) && value.equals(right)) {
+                        yield accumulate(target, Kind.GUARD, 1, value, condition.getOperation(), false, statement);
+                    }
+                }
+                yield new IfNode(i.getCondition(), block(i.getThenBlock()), i.getOtherwise().map(this::node));
+            }
+            case WhileNode w -> new WhileNode(w.getCondition(), block(w.getBlock()));
+            case DoWhileNode d -> new DoWhileNode(d.getCondition(), block(d.getBlock()));
+            case ForNode f -> new ForNode(f.getInit(), f.getCondition(), f.getIncrement(), block(f.getBlock()));
+            case ForEachNode f -> new ForEachNode(f.getIndex(), f.getIterable(), block(f.getBlock()));
+            default -> statement;
+        };
+    }
+
+    // the value of if (x > a) a = x is worked out twice when the records are run one
+    // at a time, which is only the same as once if working it out doesnt do anything
+    // (like print in a function)
+    private static boolean callsFunction(Node value) {
+        var calls = new boolean[] { false };
+        NodeWalker.walk(value, n -> calls[0] |= n instanceof FunctionCallNode);
+        return calls[0];
+    }
+
+    private StatementNode accumulate(VariableReferenceNode target, Kind kind, double sign, Node value,
+            OperationNode.Operation comparison, boolean valueFirst, StatementNode statement) {
+        if (excluded.contains(target.getName())) {
+            return statement;
+        }
+        var id = updates.size();
+        updates.add(new Update(target.getName(), target.getIndex().isPresent(), kind, sign, comparison, valueFirst));
+        var arguments = new LinkedList<Node>();
+        arguments.add(new ConstantNode(String.valueOf(id)));
+        arguments.add(target.getIndex().orElse(new ConstantNode("")));
+        arguments.add(value);
+        return new FunctionCallNode(BUILTIN, arguments);
+    }
+
+    // the updates made by a chunk of records
+    public static class Updates {
+        private record Target(String name, String key) {
+        }
+
+        // the updates to each element, in the order they were made
+        private static class Element {
+            private int[] ids = new int[4];
+            private double[] numbers = new double[4];
+            private InterpreterDataType[] values = new InterpreterDataType[4];
+            private int size = 0;
+
+            private void add(int id, double number, InterpreterDataType value) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    numbers = Arrays.copyOf(numbers, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                ids[size] = id;
+                numbers[size] = number;
+                values[size] = value;
+                size++;
+            }
+        }
+
+        // in the order each element was first updated, which is the order the real
+        // arrays have to get there keys in
+        private LinkedHashMap<Target, Element> elements = new LinkedHashMap<>();
+    }
+
+    // the BUILTIN for a copy of the interpreter, it records the updates into
+    // whatever updates is set to
+    public class Recorder {
+        private Updates updates;
+
+        public void setUpdates(Updates updates) {
+            this.updates = updates;
+        }
+
+        public BuiltInFunctionDefinitionNode builtin(Interpreter interpreter) {
+            return new BuiltInFunctionDefinitionNode(BUILTIN, vars -> {
+                int id = (int) interpreter.parse(vars.get("id"));
+                var update = Accumulators.this.updates.get(id);
+                var key = update.indexed() ? vars.get("key").getContents(interpreter.conversionFormat) : null;
+                var value = vars.get("value");
+                var element = updates.elements.computeIfAbsent(new Updates.Target(update.name(), key),
+                        target -> new Updates.Element());
+                if (update.kind() == Kind.ADD) {
+                    element.add(id, update.sign() * interpreter.parse(value), null);
+                } else {
+                    // the value could be a field, which changes with the next record
+                    element.add(id, 0, value.Clone());
+                }
+                return "";
+            }, new LinkedList<>(List.of("id", "key", "value")), false);
+        }
+    }
+
+    // does the updates on the real variables, updates have to be merged in the same
+    // order as the records they came from
+    public void merge(Updates chunk, Interpreter interpreter) {
+        chunk.elements.forEach((target, element) -> {
+            var variable = target.key() == null ? interpreter.getGlobal(target.name())
+                    : interpreter.getArray(target.name(), null).get(target.key());
+            for (int i = 0; i < element.size; i++) {
+                var update = updates.get(element.ids[i]);
+                if (update.kind() == Kind.ADD) {
+                    variable.setContents(interpreter.parse(variable) + element.numbers[i]);
+                } else {
+                    var value = element.values[i];
+                    int compared = update.valueFirst() ? interpreter.compare(value, variable)
+                            : interpreter.compare(variable, value);
+                    boolean assign = switch (update.comparison()) {
+                        case LT -> compared < 0;
+                        case LE -> compared <= 0;
+                        case GT -> compared > 0;
+                        default -> compared >= 0;
+                    };
+                    if (assign) {
+                        variable.setContents(value);
+                    }
+                }
+            }
+        });
+    }
+}
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+
 public abstract class AwkRuntimeError extends RuntimeException implements DisplayError {
     // we make them subclasses static which just means they don't have acccess to
     // the outer classes instance varaibles -> we can access the inner classes
@@ -86,17 +89,14 @@ public abstract class AwkRuntimeError extends RuntimeException implements Displa
 
     public static class ExpectedNumberError extends AwkRuntimeError {
         private InterpreterDataType value;
-        private NumberFormatException parseError;
 
-        public ExpectedNumberError(InterpreterDataType value, NumberFormatException parseError) {
+        public ExpectedNumberError(InterpreterDataType value) {
             this.value = value;
-            this.parseError = parseError;
         }
 
         @Override
         public String message() {
-            return "Expected " + value + " to be a number, but it couldn't be coerreced to a number: "
-                    + parseError.getMessage();
+            return "Expected " + value + " to be a number, but it couldn't be coerreced to a number";
         }
 
     }
@@ -129,6 +129,19 @@ public abstract class AwkRuntimeError extends RuntimeException implements Displa
         }
     }
 
+    public static class NegativeNumberOfFieldsError extends AwkRuntimeError {
+        private double value;
+
+        public NegativeNumberOfFieldsError(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public String message() {
+            return "Cannot assign negative value " + NumberFormatter.toString(value, "%.6g") + " to NF";
+        }
+    }
+
     public static class ToManyArgsForVardiacError extends AwkRuntimeError {
 
         private String name;
@@ -173,6 +186,37 @@ public abstract class AwkRuntimeError extends RuntimeException implements Displa
         }
     }
 
+    public static class OutputError extends AwkRuntimeError {
+        private IOException error;
+
+        public OutputError(IOException error) {
+            this.error = error;
+        }
+
+        @Override
+        public String message() {
+            return "Error while writing output: " + error.getMessage();
+        }
+    }
+
+    public static class InputError extends AwkRuntimeError {
+        private String input;
+        private IOException error;
+
+        public InputError(String input, IOException error) {
+            this.input = input;
+            this.error = error;
+        }
+
+        @Override
+        public String message() {
+            if (error instanceof NoSuchFileException) {
+                return "Cannot open input " + input + ": no such file";
+            }
+            return "Error while reading input " + input + ": " + error.getMessage();
+        }
+    }
+
     public static class NextInBeginError extends AwkRuntimeError {
         @Override
         public String message() {
@@ -187,4 +231,18 @@ public abstract class AwkRuntimeError extends RuntimeException implements Displa
         }
     }
 
+    public static class NextFileInBeginError extends AwkRuntimeError {
+        @Override
+        public String message() {
+            return "Nextfile statement ran in begin block";
+        }
+    }
+
+    public static class NextFileInEndError extends AwkRuntimeError {
+        @Override
+        public String message() {
+            return "Nextfile statement ran in end block";
+        }
+    }
+
 }
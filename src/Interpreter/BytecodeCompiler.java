@@ -0,0 +1,738 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// the bytecode engine
+// compiles a program into a jvm class (loaded as a hidden class) where each begin/
+// end/normal block is a static method and each user function is a static method
+// whose parameters are jvm parameters, so calling one is just invokestatic and
+// loops and ifs are just jumps
+// arithmetic is done on doubles on the jvm stack, we only make a
+// InterpreterDataType when a value is stored or passed on
+// anything more involved (variables, fields, builtins) calls into BytecodeRuntime
+// anything we dont handle makes the whole block/function it is in fall back to
+// the closure compiler, which has the same semantics
+public class BytecodeCompiler {
+    private static final String CLASS = "AwkProgram";
+    private static final String RUNTIME = "BytecodeRuntime";
+    private static final String VALUE = "InterpreterDataType";
+    private static final String ARRAY = "InterpreterArrayDataType";
+    private static final String PATTERN = "java/util/regex/Pattern";
+    private static final String BLOCK = "(LBytecodeRuntime;)V";
+
+    // opcodes (besides for the ones ClassFileWriter.Code has methods for)
+    private static final int ACONST_NULL = 0x01;
+    private static final int DCONST_0 = 0x0E;
+    private static final int AALOAD = 0x32;
+    private static final int AASTORE = 0x53;
+    private static final int POP = 0x57;
+    private static final int DUP = 0x59;
+    private static final int SWAP = 0x5F;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6B;
+    private static final int DDIV = 0x6F;
+    private static final int DREM = 0x73;
+    private static final int DNEG = 0x77;
+    private static final int DCMPL = 0x97;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9A;
+    private static final int IFLT = 0x9B;
+    private static final int IFGE = 0x9C;
+    private static final int IFGT = 0x9D;
+    private static final int IFLE = 0x9E;
+    private static final int IF_ICMPGE = 0xA2;
+    private static final int GOTO = 0xA7;
+    private static final int ARETURN = 0xB0;
+    private static final int RETURN = 0xB1;
+    private static final int ARRAYLENGTH = 0xBE;
+
+    // thrown for anything we dont compile
+    private static class Unsupported extends RuntimeException {
+        public Unsupported(String what) {
+            super(what, null, false, false);
+        }
+    }
+
+    // the compiled blocks of a program
+    public static class CompiledProgram {
+        private IdentityHashMap<BlockNode, MethodHandle> blocks;
+        private BytecodeRuntime runtime;
+
+        private CompiledProgram(IdentityHashMap<BlockNode, MethodHandle> blocks, BytecodeRuntime runtime) {
+            this.blocks = blocks;
+            this.runtime = runtime;
+        }
+
+        public boolean isCompiled(BlockNode block) {
+            return blocks.containsKey(block);
+        }
+
+        // runs block, returns false if it was not compiled (so the caller has to run
+        // it some other way)
+        public boolean run(BlockNode block) {
+            var method = blocks.get(block);
+            if (method == null) {
+                return false;
+            }
+            try {
+                method.invokeExact(runtime);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                // the generated code never throws checked exceptions
+                throw new IllegalStateException(e);
+            }
+            return true;
+        }
+    }
+
+    private ClassFileWriter classFile;
+    private List<Object> constants = new ArrayList<>();
+    private HashMap<String, FunctionNode> functions;
+    // the functions that are compiled, calls to any others go through the closure
+    // compiler
+    private HashSet<String> compiled;
+
+    // for the method being compiled
+    private ClassFileWriter.Code code;
+    private List<String> parameters;
+    private boolean inFunction;
+    // where break and continue go for each loop we are in
+    private ArrayDeque<ClassFileWriter.Label[]> loops = new ArrayDeque<>();
+
+    private BytecodeCompiler(ProgramNode program) {
+        functions = new HashMap<>(
+                program.getFunctions().stream().collect(Collectors.toMap(FunctionNode::getName, f -> f)));
+        compiled = new HashSet<>(functions.keySet());
+    }
+
+    public static CompiledProgram compile(ProgramNode program, Interpreter runtime, Compiler fallback) {
+        var compiler = new BytecodeCompiler(program);
+        var blocks = new IdentityHashMap<BlockNode, MethodHandle>();
+        try {
+            // work out which functions can be compiled first, as calls to them are
+            // compiled differently than calls to ones that cant
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (var function : program.getFunctions()) {
+                    if (compiler.compiled.contains(function.getName())) {
+                        compiler.classFile = new ClassFileWriter(CLASS);
+                        if (!compiler.function(function)) {
+                            compiler.compiled.remove(function.getName());
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            compiler.classFile = new ClassFileWriter(CLASS);
+            compiler.constants.clear();
+            for (var function : program.getFunctions()) {
+                if (compiler.compiled.contains(function.getName())) {
+                    compiler.function(function);
+                }
+            }
+            var names = new IdentityHashMap<BlockNode, String>();
+            for (var block : blocksOf(program)) {
+                var name = "block" + names.size();
+                if (compiler.block(name, block)) {
+                    names.put(block, name);
+                }
+            }
+            var lookup = MethodHandles.lookup().defineHiddenClass(compiler.classFile.toByteArray(), true);
+            for (var block : names.keySet()) {
+                blocks.put(block, lookup.findStatic(lookup.lookupClass(), names.get(block),
+                        MethodType.methodType(void.class, BytecodeRuntime.class)));
+            }
+        } catch (ClassFileWriter.TooLargeError | ReflectiveOperationException | LinkageError e) {
+            // everything falls back to the closure compiler
+            blocks.clear();
+        }
+        return new CompiledProgram(blocks,
+                new BytecodeRuntime(runtime, fallback, compiler.constants.toArray()));
+    }
+
+    private static List<BlockNode> blocksOf(ProgramNode program) {
+        var blocks = new ArrayList<BlockNode>(program.getBeginBlocks());
+        blocks.addAll(program.getRestBlocks());
+        blocks.addAll(program.getEndBlocks());
+        return blocks;
+    }
+
+    private boolean block(String name, BlockNode block) {
+        code = classFile.newCode(1);
+        parameters = List.of();
+        inFunction = false;
+        try {
+            var end = code.newLabel();
+            if (block.getCondition().isPresent()) {
+                jumpIfFalse(block.getCondition().get(), end);
+            }
+            statements(block);
+            code.mark(end);
+            code.op(RETURN, 0);
+            classFile.addMethod(name, BLOCK, code);
+            return true;
+        } catch (Unsupported | ClassFileWriter.TooLargeError e) {
+            return false;
+        } finally {
+            loops.clear();
+        }
+    }
+
+    private boolean function(FunctionNode function) {
+        parameters = function.getParameters();
+        code = classFile.newCode(1 + parameters.size());
+        inFunction = true;
+        try {
+            for (var statement : function.getStatements()) {
+                statement(statement);
+            }
+            code.invokestatic(RUNTIME, "emptyReturn", "()LInterpreterDataType;");
+            code.op(ARETURN, -1);
+            classFile.addMethod(methodName(function.getName()), descriptor(parameters.size()), code);
+            return true;
+        } catch (Unsupported | ClassFileWriter.TooLargeError e) {
+            return false;
+        } finally {
+            loops.clear();
+        }
+    }
+
+    private static String methodName(String function) {
+        return "function_" + function;
+    }
+
+    private static String descriptor(int parameters) {
+        return "(LBytecodeRuntime;" + "LInterpreterDataType;".repeat(parameters) + ")LInterpreterDataType;";
+    }
+
+    private int constant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private void statements(BlockNode block) {
+        for (var statement : block.getStatements()) {
+            statement(statement);
+        }
+    }
+
+    private void statement(Node node) {
+        switch (node) {
+            case BreakNode br -> {
+                if (loops.isEmpty()) {
+                    throw new Unsupported("break outside of a loop");
+                }
+                code.jump(GOTO, loops.peek()[0], 0);
+            }
+            case ContinueNode ct -> {
+                if (loops.isEmpty()) {
+                    throw new Unsupported("continue outside of a loop");
+                }
+                code.jump(GOTO, loops.peek()[1], 0);
+            }
+            case ReturnNode rt -> {
+                if (inFunction) {
+                    if (rt.getReturnValue().isPresent()) {
+                        expression(rt.getReturnValue().get());
+                        code.invokestatic(RUNTIME, "returnValue", "(LInterpreterDataType;)LInterpreterDataType;");
+                    } else {
+                        code.invokestatic(RUNTIME, "emptyReturn", "()LInterpreterDataType;");
+                    }
+                    code.op(ARETURN, -1);
+                } else {
+                    if (rt.getReturnValue().isPresent()) {
+                        expression(rt.getReturnValue().get());
+                    } else {
+                        code.op(ACONST_NULL, 1);
+                    }
+                    code.invokestatic(RUNTIME, "returnInBlock", "(LInterpreterDataType;)V");
+                }
+            }
+            case DoWhileNode dw -> {
+                var start = code.newLabel();
+                var condition = code.newLabel();
+                var end = code.newLabel();
+                code.mark(start);
+                loop(dw.getBlock(), end, condition);
+                code.mark(condition);
+                jumpIfFalse(dw.getCondition(), end);
+                code.jump(GOTO, start, 0);
+                code.mark(end);
+            }
+            case WhileNode wl -> {
+                var condition = code.newLabel();
+                var end = code.newLabel();
+                code.mark(condition);
+                jumpIfFalse(wl.getCondition(), end);
+                loop(wl.getBlock(), end, condition);
+                code.jump(GOTO, condition, 0);
+                code.mark(end);
+            }
+            case ForNode fr -> {
+                var condition = code.newLabel();
+                var increment = code.newLabel();
+                var end = code.newLabel();
+                if (fr.getInit().isPresent()) {
+                    expression(fr.getInit().get());
+                    code.op(POP, -1);
+                }
+                code.mark(condition);
+                if (fr.getCondition().isPresent()) {
+                    jumpIfFalse(fr.getCondition().get(), end);
+                }
+                loop(fr.getBlock(), end, increment);
+                code.mark(increment);
+                if (fr.getIncrement().isPresent()) {
+                    expression(fr.getIncrement().get());
+                    code.op(POP, -1);
+                }
+                code.jump(GOTO, condition, 0);
+                code.mark(end);
+            }
+            case IfNode ifs -> {
+                var otherwise = code.newLabel();
+                var end = code.newLabel();
+                jumpIfFalse(ifs.getCondition(), otherwise);
+                statements(ifs.getThenBlock());
+                code.jump(GOTO, end, 0);
+                code.mark(otherwise);
+                if (ifs.getOtherwise().isPresent()) {
+                    if (ifs.getOtherwise().get() instanceof BlockNode block) {
+                        statements(block);
+                    } else {
+                        statement(ifs.getOtherwise().get());
+                    }
+                }
+                code.mark(end);
+            }
+            case ForEachNode fe -> forEach(fe);
+            case DeleteNode dl -> {
+                if (!(dl.getArray() instanceof VariableReferenceNode v)) {
+                    throw new Unsupported("delete of something that isnt an array");
+                }
+                loadArray(v);
+                if (v.getIndex().isPresent()) {
+                    expression(v.getIndex().get());
+                    contents();
+                    code.invokevirtual(ARRAY, "get", "(Ljava/lang/String;)LInterpreterDataType;");
+                    code.pushString("");
+                    code.invokevirtual(VALUE, "setContents", "(Ljava/lang/String;)V");
+                } else {
+                    code.invokevirtual(ARRAY, "clear", "()V");
+                }
+            }
+            // otherwise its an expression that we only run for its side effects
+            default -> {
+                expression(node);
+                code.op(POP, -1);
+            }
+        }
+    }
+
+    private void loop(BlockNode body, ClassFileWriter.Label end, ClassFileWriter.Label next) {
+        loops.push(new ClassFileWriter.Label[] { end, next });
+        statements(body);
+        loops.pop();
+    }
+
+    private void forEach(ForEachNode fe) {
+        if (!(fe.getIterable() instanceof VariableReferenceNode v)) {
+            throw new Unsupported("for in over something that isnt an array");
+        }
+        // the index is global and local (see Compiler.ForEach), we only do the
+        // global part
+        if (parameters.contains(fe.getIndex())) {
+            throw new Unsupported("for in with a parameter as the index");
+        }
+        int keys = code.newLocal();
+        int i = code.newLocal();
+        var condition = code.newLabel();
+        var next = code.newLabel();
+        var end = code.newLabel();
+        loadArray(v);
+        code.invokestatic(RUNTIME, "keys", "(LInterpreterArrayDataType;)[Ljava/lang/String;");
+        code.astore(keys);
+        code.pushInt(0);
+        code.istore(i);
+        code.mark(condition);
+        code.iload(i);
+        code.aload(keys);
+        code.op(ARRAYLENGTH, 0);
+        code.jump(IF_ICMPGE, end, -2);
+        code.aload(0);
+        code.pushString(fe.getIndex());
+        code.invokevirtual(RUNTIME, "global", "(Ljava/lang/String;)LInterpreterDataType;");
+        code.aload(keys);
+        code.iload(i);
+        code.op(AALOAD, -1);
+        code.invokevirtual(VALUE, "setContents", "(Ljava/lang/String;)V");
+        loop(fe.getBlock(), end, next);
+        code.mark(next);
+        code.iinc(i, 1);
+        code.jump(GOTO, condition, 0);
+        code.mark(end);
+    }
+
+    // leaves a InterpreterDataType on the stack
+    private void expression(Node node) {
+        switch (node) {
+            case ConstantNode c -> {
+                // constants are parsed already, so we copy the parsed value
+                code.aload(0);
+                code.pushInt(constant(c));
+                code.invokevirtual(RUNTIME, "constant", "(I)Ljava/lang/Object;");
+                code.checkcast("ConstantNode");
+                code.invokevirtual("ConstantNode", "newValue", "()LInterpreterDataType;");
+            }
+            // patterns are valid anywhere in awk
+            case PatternNode p -> newValue(p.getPattern());
+            case VariableReferenceNode v -> {
+                if (v.getIndex().isPresent()) {
+                    expression(v.getIndex().get());
+                    contents();
+                    loadArray(v);
+                    code.op(SWAP, 0);
+                    code.invokevirtual(ARRAY, "get", "(Ljava/lang/String;)LInterpreterDataType;");
+                } else if (v.isLocal()) {
+                    code.aload(v.getSlot() + 1);
+                } else {
+                    code.aload(0);
+                    code.pushInt(v.getSlot());
+                    code.invokevirtual(RUNTIME, "variable", "(I)LInterpreterDataType;");
+                }
+            }
+            case AssignmentNode a -> {
+                if (!assignable(a.getTarget())) {
+                    throw new Unsupported("assignment to something that isnt a variable");
+                }
+                expression(a.getExpression());
+                code.op(DUP, 1);
+                expression(a.getTarget());
+                code.op(SWAP, 0);
+                code.invokevirtual(VALUE, "setContents", "(LInterpreterDataType;)V");
+            }
+            case TernaryOperationNode t -> {
+                var otherwise = code.newLabel();
+                var end = code.newLabel();
+                jumpIfFalse(t.getCond(), otherwise);
+                expression(t.getThen());
+                code.jump(GOTO, end, 0);
+                code.setStack(code.getStack() - 1);
+                code.mark(otherwise);
+                expression(t.getAlt());
+                code.mark(end);
+            }
+            case FunctionCallNode f -> call(f);
+            case OperationNode op -> operation(op);
+            default -> throw new Unsupported(node.toString());
+        }
+    }
+
+    private void newValue(String value) {
+        code.newObject(VALUE);
+        code.op(DUP, 1);
+        code.pushString(value);
+        code.invokespecial(VALUE, "<init>", "(Ljava/lang/String;)V");
+    }
+
+    // value on the stack -> its string (with the interpreters CONVFMT)
+    private void contents() {
+        code.aload(0);
+        code.op(SWAP, 0);
+        code.invokevirtual(RUNTIME, "contents", "(LInterpreterDataType;)Ljava/lang/String;");
+    }
+
+    private static boolean assignable(Node node) {
+        return node instanceof VariableReferenceNode
+                || node instanceof OperationNode op && op.getOperation() == OperationNode.Operation.DOLLAR;
+    }
+
+    private void loadArray(VariableReferenceNode variable) {
+        if (variable.isLocal()) {
+            code.aload(variable.getSlot() + 1);
+            code.pushString(variable.getName());
+            code.invokestatic(RUNTIME, "asArray",
+                    "(LInterpreterDataType;Ljava/lang/String;)LInterpreterArrayDataType;");
+        } else {
+            code.aload(0);
+            code.pushInt(variable.getSlot());
+            code.invokevirtual(RUNTIME, "array", "(I)LInterpreterArrayDataType;");
+        }
+    }
+
+    private void operation(OperationNode op) {
+        switch (op.getOperation()) {
+            case DOLLAR -> {
+                code.aload(0);
+                expression(op.getLeft());
+                code.pushInt(constant(op));
+                code.invokevirtual(RUNTIME, "field", "(LInterpreterDataType;I)LInterpreterDataType;");
+            }
+            case ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULO, EXPONENT, UNARYNEG, UNARYPOS -> {
+                code.newObject(VALUE);
+                code.op(DUP, 1);
+                number(op);
+                code.invokespecial(VALUE, "<init>", "(D)V");
+            }
+            case CONCATENATION -> {
+                expression(op.getLeft());
+                contents();
+                expression(op.getRight().get());
+                contents();
+                code.invokestatic(RUNTIME, "concatenate",
+                        "(Ljava/lang/String;Ljava/lang/String;)LInterpreterDataType;");
+            }
+            case PREINC, POSTINC, PREDEC, POSTDEC -> {
+                if (!assignable(op.getLeft())) {
+                    throw new Unsupported("increment of something that isnt a variable");
+                }
+                var operation = op.getOperation();
+                code.aload(0);
+                expression(op.getLeft());
+                code.pushDouble(
+                        operation == OperationNode.Operation.PREINC || operation == OperationNode.Operation.POSTINC
+                                ? 1
+                                : -1);
+                code.pushInt(
+                        operation == OperationNode.Operation.PREINC || operation == OperationNode.Operation.PREDEC
+                                ? 1
+                                : 0);
+                code.invokevirtual(RUNTIME, "increment", "(LInterpreterDataType;DZ)LInterpreterDataType;");
+            }
+            // everything else is true or false
+            default -> {
+                condition(op);
+                code.invokestatic(RUNTIME, "bool", "(Z)LInterpreterDataType;");
+            }
+        }
+    }
+
+    // whether node always gives back a number, so comparisons with it can be done on
+    // doubles
+    private static boolean isNumber(Node node) {
+        return switch (node) {
+            case ConstantNode c -> c.newValue().isNumber();
+            case OperationNode op -> switch (op.getOperation()) {
+                case ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULO, EXPONENT, UNARYNEG, UNARYPOS -> true;
+                default -> false;
+            };
+            default -> false;
+        };
+    }
+
+    // leaves a double on the stack
+    private void number(Node node) {
+        if (node instanceof ConstantNode c) {
+            var constant = c.newValue();
+            if (constant.isNumber()) {
+                code.pushDouble(constant.getNumber());
+                return;
+            }
+        }
+        if (node instanceof OperationNode op) {
+            int opcode = switch (op.getOperation()) {
+                case ADD -> DADD;
+                case SUBTRACT -> DSUB;
+                case MULTIPLY -> DMUL;
+                case DIVIDE -> DDIV;
+                case MODULO -> DREM;
+                default -> 0;
+            };
+            if (opcode != 0) {
+                number(op.getLeft());
+                number(op.getRight().get());
+                code.op(opcode, -2);
+                return;
+            }
+            switch (op.getOperation()) {
+                case EXPONENT -> {
+                    number(op.getLeft());
+                    number(op.getRight().get());
+                    code.invokestatic("java/lang/Math", "pow", "(DD)D");
+                    return;
+                }
+                case UNARYNEG -> {
+                    number(op.getLeft());
+                    code.op(DNEG, 0);
+                    return;
+                }
+                // unary pos is just used to check that a IDT is a numberish
+                case UNARYPOS -> {
+                    number(op.getLeft());
+                    return;
+                }
+                default -> {
+                }
+            }
+        }
+        code.aload(0);
+        expression(node);
+        code.invokevirtual(RUNTIME, "parse", "(LInterpreterDataType;)D");
+    }
+
+    // leaves 1 or 0 (an int) on the stack
+    private void condition(Node node) {
+        var otherwise = code.newLabel();
+        var end = code.newLabel();
+        jumpIfFalse(node, otherwise);
+        code.pushInt(1);
+        code.jump(GOTO, end, 0);
+        code.setStack(code.getStack() - 1);
+        code.mark(otherwise);
+        code.pushInt(0);
+        code.mark(end);
+    }
+
+    private void jumpIfFalse(Node node, ClassFileWriter.Label target) {
+        if (node instanceof OperationNode op) {
+            switch (op.getOperation()) {
+                case EQ, NE, LT, LE, GT, GE -> {
+                    compare(op.getLeft(), op.getRight().get());
+                    code.jump(switch (op.getOperation()) {
+                        case EQ -> IFNE;
+                        case NE -> IFEQ;
+                        case LT -> IFGE;
+                        case LE -> IFGT;
+                        case GT -> IFLE;
+                        default -> IFLT;
+                    }, target, -1);
+                    return;
+                }
+                case AND -> {
+                    jumpIfFalse(op.getLeft(), target);
+                    jumpIfFalse(op.getRight().get(), target);
+                    return;
+                }
+                case OR -> {
+                    var right = code.newLabel();
+                    var end = code.newLabel();
+                    jumpIfFalse(op.getLeft(), right);
+                    code.jump(GOTO, end, 0);
+                    code.mark(right);
+                    jumpIfFalse(op.getRight().get(), target);
+                    code.mark(end);
+                    return;
+                }
+                case NOT -> {
+                    condition(op.getLeft());
+                    code.jump(IFNE, target, -1);
+                    return;
+                }
+                case MATCH, NOTMATCH -> {
+                    match(op);
+                    code.jump(op.getOperation() == OperationNode.Operation.MATCH ? IFEQ : IFNE, target, -1);
+                    return;
+                }
+                case IN -> {
+                    expression(op.getLeft());
+                    contents();
+                    // through error if the index is present since we do not support
+                    // mutlidimensional arrays
+                    if (op.getRight().get() instanceof VariableReferenceNode v && v.getIndex().isEmpty()) {
+                        loadArray(v);
+                        code.op(SWAP, 0);
+                        code.invokevirtual(ARRAY, "contains", "(Ljava/lang/String;)Z");
+                    } else {
+                        code.invokestatic(RUNTIME, "notAnArray", "(Ljava/lang/String;)Z");
+                    }
+                    code.jump(IFEQ, target, -1);
+                    return;
+                }
+                default -> {
+                }
+            }
+        }
+        if (isNumber(node)) {
+            number(node);
+            code.op(DCONST_0, 2);
+            code.op(DCMPL, -3);
+        } else {
+            expression(node);
+            code.invokestatic(RUNTIME, "truthy", "(LInterpreterDataType;)Z");
+        }
+        code.jump(IFEQ, target, -1);
+    }
+
+    // leaves the result of comparing left and right (an int like compareTo) on the
+    // stack
+    private void compare(Node left, Node right) {
+        if (isNumber(left) && isNumber(right)) {
+            number(left);
+            number(right);
+            code.invokestatic("java/lang/Double", "compare", "(DD)I");
+        } else {
+            code.aload(0);
+            expression(left);
+            expression(right);
+            code.invokevirtual(RUNTIME, "compare", "(LInterpreterDataType;LInterpreterDataType;)I");
+        }
+    }
+
+    // ~ the whole string has to match, leaves whether it did on the stack
+    private void match(OperationNode op) {
+        code.aload(0);
+        expression(op.getLeft());
+        code.invokevirtual(RUNTIME, "chars", "(LInterpreterDataType;)Ljava/lang/CharSequence;");
+        if (op.getRight().get() instanceof PatternNode p && p.getCompiled().isPresent()) {
+            // regex literals are already compiled
+            code.aload(0);
+            code.pushInt(constant(p.getCompiled().get()));
+            code.invokevirtual(RUNTIME, "constant", "(I)Ljava/lang/Object;");
+            code.checkcast(PATTERN);
+        } else {
+            code.aload(0);
+            expression(op.getRight().get());
+            contents();
+            code.invokevirtual(RUNTIME, "regex", "(Ljava/lang/String;)Ljava/util/regex/Pattern;");
+        }
+        code.invokestatic(RUNTIME, "matches", "(Ljava/lang/CharSequence;Ljava/util/regex/Pattern;)Z");
+    }
+
+    private void call(FunctionCallNode call) {
+        var name = call.getFunctionName();
+        var arguments = call.getParameters();
+        var user = functions.get(name);
+        if (user != null && compiled.contains(name) && user.getParameters().size() == arguments.size()) {
+            code.aload(0);
+            for (var argument : arguments) {
+                expression(argument);
+                if (!Interpreter.isTemporary(argument)) {
+                    code.invokevirtual(VALUE, "Clone", "()LInterpreterDataType;");
+                }
+            }
+            code.invokestatic(CLASS, methodName(name), descriptor(arguments.size()));
+            return;
+        }
+        // builtins (and functions we could not compile) go through the closure compiler
+        code.aload(0);
+        code.pushString(name);
+        code.pushInt(arguments.size());
+        code.invokevirtual(RUNTIME, "checkCall", "(Ljava/lang/String;I)V");
+        code.aload(0);
+        code.pushString(name);
+        code.pushInt(arguments.size());
+        code.newArray(VALUE);
+        int i = 0;
+        for (var argument : arguments) {
+            code.op(DUP, 1);
+            code.pushInt(i++);
+            expression(argument);
+            // for builtins we do not clone so [g?]sub works
+            if (user != null && !Interpreter.isTemporary(argument)) {
+                code.invokevirtual(VALUE, "Clone", "()LInterpreterDataType;");
+            }
+            code.op(AASTORE, -3);
+        }
+        code.invokevirtual(RUNTIME, "call", "(Ljava/lang/String;[LInterpreterDataType;)LInterpreterDataType;");
+    }
+}
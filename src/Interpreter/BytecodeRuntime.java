@@ -0,0 +1,133 @@
+import java.util.List;
+import java.util.regex.Pattern;
+
+// what the classes made by BytecodeCompiler call into for anything that isnt
+// simple enough to write out as bytecode (looking up variables, builtins, ...)
+// every generated method gets one of these as its first argument
+// public as the generated classes call these methods
+public class BytecodeRuntime {
+    private Interpreter runtime;
+    private Compiler fallback;
+    // things the generated code needs that cant be put in the constant pool (nodes
+    // for errors, compiled regexes)
+    private Object[] constants;
+
+    public BytecodeRuntime(Interpreter runtime, Compiler fallback, Object[] constants) {
+        this.runtime = runtime;
+        this.fallback = fallback;
+        this.constants = constants;
+    }
+
+    public Object constant(int index) {
+        return constants[index];
+    }
+
+    public InterpreterDataType variable(int slot) {
+        return runtime.getGlobal(slot, InterpreterDataType::new);
+    }
+
+    public InterpreterArrayDataType array(int slot) {
+        return asArray(runtime.getGlobal(slot, InterpreterArrayDataType::new), runtime.getGlobalName(slot));
+    }
+
+    // for parameters, which could have been passed either
+    public static InterpreterArrayDataType asArray(InterpreterDataType value, String name) {
+        if (value instanceof InterpreterArrayDataType array) {
+            return array;
+        }
+        throw new AwkRuntimeError.ExpectedArrayError(name, value.getContents());
+    }
+
+    public InterpreterDataType global(String name) {
+        return runtime.getGlobal(name);
+    }
+
+    public double parse(InterpreterDataType value) {
+        return runtime.parse(value);
+    }
+
+    public InterpreterDataType field(InterpreterDataType index, int node) {
+        var field = runtime.parse(index);
+        // negative index is not allowed (checked here as opposed to in Record::Get)
+        if (field < 0) {
+            throw new AwkRuntimeError.NegativeFieldIndexError((OperationNode) constants[node], (int) field);
+        }
+        return runtime.getRecord().Get((int) field);
+    }
+
+    public InterpreterDataType increment(InterpreterDataType value, double by, boolean pre) {
+        var oldValue = runtime.parse(value);
+        var newValue = oldValue + by;
+        value.setContents(newValue);
+        // same as the interpreter
+        return new InterpreterDataType(pre ? oldValue : newValue);
+    }
+
+    // numbers are made into strings with the interpreters CONVFMT
+    public String contents(InterpreterDataType value) {
+        return value.getContents(runtime.conversionFormat);
+    }
+
+    public CharSequence chars(InterpreterDataType value) {
+        return value.getCharSequence(runtime.conversionFormat);
+    }
+
+    public Pattern regex(String regex) {
+        return runtime.regexes.get(regex);
+    }
+
+    public static boolean matches(CharSequence haystack, Pattern regex) {
+        return regex.matcher(haystack).matches();
+    }
+
+    public static boolean truthy(InterpreterDataType value) {
+        return Interpreter.isTruthy(value);
+    }
+
+    public static InterpreterDataType bool(boolean value) {
+        return new InterpreterDataType(value ? "1" : "0");
+    }
+
+    // same as the interpreter
+    public int compare(InterpreterDataType x, InterpreterDataType y) {
+        return runtime.compare(x, y);
+    }
+
+    public static InterpreterDataType concatenate(String x, String y) {
+        return new InterpreterDataType(x + y);
+    }
+
+    // in with something that isnt an array
+    public static boolean notAnArray(String key) {
+        throw new AwkRuntimeError.ExpectedArrayError(key, "");
+    }
+
+    public static String[] keys(InterpreterArrayDataType array) {
+        return array.getKeysList().toArray(String[]::new);
+    }
+
+    // calls to builtins and to functions that could not be compiled go through the
+    // closure compiler
+    public void checkCall(String name, int arguments) {
+        fallback.checkArity(fallback.lookup(name), arguments, name);
+    }
+
+    public InterpreterDataType call(String name, InterpreterDataType[] arguments) {
+        return fallback.invoke(fallback.lookup(name), List.of(arguments));
+    }
+
+    // functions return a copy of the value (numbers keep there precision)
+    public static InterpreterDataType returnValue(InterpreterDataType value) {
+        return InterpreterDataType.scalarCopy(value);
+    }
+
+    public static InterpreterDataType emptyReturn() {
+        return new InterpreterDataType("");
+    }
+
+    // return in a begin/end/normal block
+    public static void returnInBlock(InterpreterDataType value) {
+        throw new AwkRuntimeError.ReturnInOuterBlockError(value == null ? ReturnType.RETURN
+                : new ReturnType(InterpreterDataType.scalarCopy(value), ReturnType.ReturnKind.Return));
+    }
+}
@@ -0,0 +1,395 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// writes just enough of the jvm class file format for the classes BytecodeCompiler
+// makes: one class with only static methods and no fields
+// https://docs.oracle.com/javase/specs/jvms/se21/html/jvms-4.html
+// we write version 49 class files, which dont need stack map frames (the jvm
+// works out the types itself when verifying them), so we dont have to compute
+// them
+public class ClassFileWriter {
+    // thrown when something cant be written, like a method thats to big or has a
+    // jump thats to far
+    public static class TooLargeError extends RuntimeException {
+        public TooLargeError(String message) {
+            super(message);
+        }
+    }
+
+    private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private DataOutputStream pool = new DataOutputStream(poolBytes);
+    // so each constant is only in the pool once
+    private HashMap<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+    private int thisClass;
+    private int superClass;
+    private List<byte[]> methods = new ArrayList<>();
+
+    public ClassFileWriter(String name) {
+        thisClass = classRef(name);
+        superClass = classRef("java/lang/Object");
+    }
+
+    private interface PoolWriter {
+        void write(DataOutputStream pool) throws IOException;
+    }
+
+    private int constant(String key, int size, PoolWriter writer) {
+        var index = constants.get(key);
+        if (index == null) {
+            index = constantCount;
+            try {
+                writer.write(pool);
+            } catch (IOException e) {
+                // writing to a byte array doesnt fail
+                throw new UncheckedIOException(e);
+            }
+            constantCount += size;
+            if (constantCount > 0xFFFF) {
+                throw new TooLargeError("to many constants");
+            }
+            constants.put(key, index);
+        }
+        return index;
+    }
+
+    public int utf8(String value) {
+        return constant("U" + value, 1, p -> {
+            p.writeByte(1);
+            p.writeUTF(value);
+        });
+    }
+
+    public int classRef(String name) {
+        int utf8 = utf8(name);
+        return constant("C" + name, 1, p -> {
+            p.writeByte(7);
+            p.writeShort(utf8);
+        });
+    }
+
+    public int string(String value) {
+        int utf8 = utf8(value);
+        return constant("S" + value, 1, p -> {
+            p.writeByte(8);
+            p.writeShort(utf8);
+        });
+    }
+
+    public int integer(int value) {
+        return constant("I" + value, 1, p -> {
+            p.writeByte(3);
+            p.writeInt(value);
+        });
+    }
+
+    // doubles take up two entries in the pool
+    public int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, 2, p -> {
+            p.writeByte(6);
+            p.writeLong(bits);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("N" + name + " " + descriptor, 1, p -> {
+            p.writeByte(12);
+            p.writeShort(nameIndex);
+            p.writeShort(descriptorIndex);
+        });
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return constant("M" + owner + "." + name + descriptor, 1, p -> {
+            p.writeByte(10);
+            p.writeShort(ownerIndex);
+            p.writeShort(nameAndType);
+        });
+    }
+
+    // adds a public static method
+    public void addMethod(String name, String descriptor, Code code) {
+        var bytes = new ByteArrayOutputStream();
+        var method = new DataOutputStream(bytes);
+        var codeBytes = code.finish();
+        if (codeBytes.length > 0xFFFF) {
+            throw new TooLargeError("method " + name + " is to large");
+        }
+        try {
+            // public static
+            method.writeShort(0x0009);
+            method.writeShort(utf8(name));
+            method.writeShort(utf8(descriptor));
+            method.writeShort(1);
+            method.writeShort(utf8("Code"));
+            method.writeInt(2 + 2 + 4 + codeBytes.length + 2 + 2);
+            method.writeShort(code.maxStack);
+            method.writeShort(code.maxLocals);
+            method.writeInt(codeBytes.length);
+            method.write(codeBytes);
+            // no exception table or attributes
+            method.writeShort(0);
+            method.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    public byte[] toByteArray() {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(constantCount);
+            poolBytes.writeTo(out);
+            // public final super
+            out.writeShort(0x0031);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            // no interfaces or fields
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (var method : methods) {
+                out.write(method);
+            }
+            // no attributes
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // a place in the code that can be jumped to
+    public static class Label {
+        private int position = -1;
+        // where the jumps to this label are (the instruction and where its offset
+        // goes)
+        private List<int[]> jumps = new ArrayList<>();
+    }
+
+    // the body of a method
+    // keeps track of how deep the stack gets and how many locals are used so we can
+    // fill in max stack and max locals
+    public class Code {
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+        private List<Label> labels = new ArrayList<>();
+
+        public Code(int locals) {
+            maxLocals = locals;
+        }
+
+        public int newLocal() {
+            return maxLocals++;
+        }
+
+        // we only use the short forms of the local instructions
+        private void local(int local) {
+            if (local > 0xFF) {
+                throw new TooLargeError("to many locals");
+            }
+            u1(local);
+        }
+
+        private void u1(int value) {
+            if (length == bytes.length) {
+                bytes = java.util.Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private void adjustStack(int change) {
+            stack += change;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        // for when code after an unconditional jump starts with a different stack
+        public void setStack(int stack) {
+            this.stack = stack;
+        }
+
+        public int getStack() {
+            return stack;
+        }
+
+        public void op(int opcode, int stackChange) {
+            u1(opcode);
+            adjustStack(stackChange);
+        }
+
+        public void aload(int local) {
+            op(0x19, 1);
+            local(local);
+        }
+
+        public void astore(int local) {
+            op(0x3A, -1);
+            local(local);
+        }
+
+        public void iload(int local) {
+            op(0x15, 1);
+            local(local);
+        }
+
+        public void istore(int local) {
+            op(0x36, -1);
+            local(local);
+        }
+
+        public void iinc(int local, int by) {
+            op(0x84, 0);
+            local(local);
+            u1(by);
+        }
+
+        public void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value, 1);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(0x11, 1);
+                u2(value);
+            } else {
+                ldc(integer(value));
+            }
+        }
+
+        public void pushString(String value) {
+            ldc(string(value));
+        }
+
+        private void ldc(int index) {
+            // ldc_w
+            op(0x13, 1);
+            u2(index);
+        }
+
+        public void pushDouble(double value) {
+            // ldc2_w
+            op(0x14, 2);
+            u2(doubleConstant(value));
+        }
+
+        public void newObject(String type) {
+            op(0xBB, 1);
+            u2(classRef(type));
+        }
+
+        public void checkcast(String type) {
+            op(0xC0, 0);
+            u2(classRef(type));
+        }
+
+        public void newArray(String type) {
+            // anewarray takes the length and leaves the array
+            op(0xBD, 0);
+            u2(classRef(type));
+        }
+
+        private void invoke(int opcode, String owner, String name, String descriptor, boolean hasReceiver) {
+            op(opcode, stackChange(descriptor) - (hasReceiver ? 1 : 0));
+            u2(methodRef(owner, name, descriptor));
+        }
+
+        public void invokevirtual(String owner, String name, String descriptor) {
+            invoke(0xB6, owner, name, descriptor, true);
+        }
+
+        public void invokespecial(String owner, String name, String descriptor) {
+            invoke(0xB7, owner, name, descriptor, true);
+        }
+
+        public void invokestatic(String owner, String name, String descriptor) {
+            invoke(0xB8, owner, name, descriptor, false);
+        }
+
+        public Label newLabel() {
+            var label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        public void mark(Label label) {
+            label.position = length;
+        }
+
+        // any of the if* instructions or goto
+        public void jump(int opcode, Label label, int stackChange) {
+            int instruction = length;
+            op(opcode, stackChange);
+            label.jumps.add(new int[] { instruction, length });
+            u2(0);
+        }
+
+        private byte[] finish() {
+            for (var label : labels) {
+                for (var jump : label.jumps) {
+                    int offset = label.position - jump[0];
+                    if (label.position == -1 || offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new TooLargeError("jump to far");
+                    }
+                    bytes[jump[1]] = (byte) (offset >> 8);
+                    bytes[jump[1] + 1] = (byte) offset;
+                }
+            }
+            return java.util.Arrays.copyOf(bytes, length);
+        }
+    }
+
+    // how much a method call with descriptor changes the stack (not counting the
+    // receiver)
+    private static int stackChange(String descriptor) {
+        int change = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            change -= size(descriptor.charAt(i));
+            i = skipType(descriptor, i);
+        }
+        return change + size(descriptor.charAt(i + 1));
+    }
+
+    private static int size(char type) {
+        return switch (type) {
+            case 'V' -> 0;
+            case 'D', 'J' -> 2;
+            default -> 1;
+        };
+    }
+
+    private static int skipType(String descriptor, int i) {
+        while (descriptor.charAt(i) == '[') {
+            i++;
+        }
+        if (descriptor.charAt(i) == 'L') {
+            return descriptor.indexOf(';', i) + 1;
+        }
+        return i + 1;
+    }
+
+    public Code newCode(int locals) {
+        return new Code(locals);
+    }
+}
@@ -0,0 +1,895 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// the closure compiling engine
+// instead of walking the ast and switching on what kind of node it is every time
+// a node is run, each node is compiled once into an object that only knows how
+// to do that one thing with its children already compiled, so running a program
+// is just calling evaluate/execute on a tree of these
+// it uses the same runtime as the interpreter (variables, record, builtins), only
+// how the program is run is different
+public class Compiler {
+    // something that makes a value (what GetIDT does for a node)
+    public interface Expression {
+        InterpreterDataType evaluate(Frame locals);
+    }
+
+    // something that is run for its effect (what ProcessStatement does for a node)
+    public interface Statement {
+        ReturnType execute(Frame locals);
+    }
+
+    private Interpreter runtime;
+    // blocks and functions are compiled once and reused
+    private IdentityHashMap<BlockNode, Block> blocks = new IdentityHashMap<>();
+    private HashMap<String, Block> functions = new HashMap<>();
+    private Frame.Stack frames = new Frame.Stack();
+
+    public Compiler(Interpreter runtime) {
+        this.runtime = runtime;
+    }
+
+    // compiles a (begin/end/normal) block including its condition
+    public Block block(BlockNode block) {
+        var compiled = blocks.get(block);
+        if (compiled == null) {
+            compiled = new Block(block.getStatements().stream().map(this::statement).toArray(Statement[]::new),
+                    block.getCondition().map(this::expression));
+            blocks.put(block, compiled);
+        }
+        return compiled;
+    }
+
+    public Expression expression(Node node) {
+        return switch (node) {
+            case AssignmentNode a -> assignment(a);
+            case ConstantNode c -> new Constant(c);
+            case FunctionCallNode f -> new Call(f, f.getParameters().stream().map(this::expression).toList());
+            // patterns are valid anywhere in awk
+            case PatternNode p -> new Constant(new ConstantNode(p.getPattern()));
+            case TernaryOperationNode t -> new Ternary(expression(t.getCond()), expression(t.getThen()),
+                    expression(t.getAlt()));
+            case VariableReferenceNode v -> v.getIndex().<Expression>map(i -> new ArrayElement(v, expression(i)))
+                    .orElseGet(() -> new Variable(v));
+            case OperationNode op -> operation(op);
+            default -> locals -> null;
+        };
+    }
+
+    private Expression assignment(AssignmentNode a) {
+        var value = expression(a.getExpression());
+        if (!assignable(a.getTarget())) {
+            // only an error if its run
+            return locals -> {
+                value.evaluate(locals);
+                throw new AwkRuntimeError.NotAVariableError(a.getTarget());
+            };
+        }
+        return new Assignment(expression(a.getTarget()), value);
+    }
+
+    private static boolean assignable(Node node) {
+        return node instanceof VariableReferenceNode
+                || node instanceof OperationNode op && op.getOperation() == OperationNode.Operation.DOLLAR;
+    }
+
+    private Expression operation(OperationNode op) {
+        var left = expression(op.getLeft());
+        var right = op.getRight().map(this::expression).orElse(null);
+        return switch (op.getOperation()) {
+            case DOLLAR -> new Field(op, left);
+            case ADD -> new Add(left, right);
+            case SUBTRACT -> new Subtract(left, right);
+            case MULTIPLY -> new Multiply(left, right);
+            case DIVIDE -> new Divide(left, right);
+            case MODULO -> new Modulo(left, right);
+            case EXPONENT -> new Exponent(left, right);
+            case UNARYNEG -> new Negate(left);
+            // unary pos is just used to check that a IDT is a numberish
+            case UNARYPOS -> new Plus(left);
+            case AND -> new And(left, right);
+            case OR -> new Or(left, right);
+            case NOT -> new Not(left);
+            case CONCATENATION -> new Concatenation(left, right);
+            case EQ -> new Equal(left, right);
+            case NE -> new NotEqual(left, right);
+            case LT -> new Less(left, right);
+            case LE -> new LessEqual(left, right);
+            case GT -> new Greater(left, right);
+            case GE -> new GreaterEqual(left, right);
+            case MATCH -> new Match(left, op.getRight().get(), right);
+            case NOTMATCH -> new NotMatch(new Match(left, op.getRight().get(), right));
+            case IN -> new In(left, op.getRight().get());
+            case PREINC, POSTINC, PREDEC, POSTDEC -> increment(op, left);
+        };
+    }
+
+    private Expression increment(OperationNode op, Expression variable) {
+        if (!assignable(op.getLeft())) {
+            return locals -> {
+                throw new AwkRuntimeError.NotAVariableError(op.getLeft());
+            };
+        }
+        return switch (op.getOperation()) {
+            case PREINC -> new Increment(variable, 1, true);
+            case POSTINC -> new Increment(variable, 1, false);
+            case PREDEC -> new Increment(variable, -1, true);
+            default -> new Increment(variable, -1, false);
+        };
+    }
+
+    public Statement statement(StatementNode node) {
+        return switch (node) {
+            case BreakNode br -> locals -> ReturnType.BREAK;
+            case ContinueNode ct -> locals -> ReturnType.CONTINUE;
+            case ReturnNode rt -> new Return(rt.getReturnValue().map(this::expression));
+            case DoWhileNode dw -> new DoWhile(expression(dw.getCondition()), statements(dw.getBlock()));
+            case WhileNode wl -> new While(expression(wl.getCondition()), statements(wl.getBlock()));
+            case IfNode ifs -> new If(expression(ifs.getCondition()), statements(ifs.getThenBlock()),
+                    ifs.getOtherwise().map(otherwise -> otherwise instanceof IfNode elif ? statement(elif)
+                            : statements((BlockNode) otherwise)));
+            case ForNode fr -> new For(fr.getInit().map(this::expression), fr.getCondition().map(this::expression),
+                    fr.getIncrement().map(this::expression), statements(fr.getBlock()));
+            case ForEachNode fe -> fe.getIterable() instanceof VariableReferenceNode v
+                    ? new ForEach(fe.getIndex(), v, statements(fe.getBlock()))
+                    : locals -> {
+                        throw new AwkRuntimeError.ExpectedIterableError(fe.getIterable().toString());
+                    };
+            case DeleteNode dl -> dl.getArray() instanceof VariableReferenceNode v
+                    ? new Delete(v, v.getIndex().map(this::expression))
+                    : locals -> {
+                        throw new AwkRuntimeError.ExpectedDeleteArrayError(dl.getArray().toString());
+                    };
+            // otherwise its an expression that we only run for its side effects
+            default -> new ExpressionStatement(expression(node));
+        };
+    }
+
+    private Statements statements(BlockNode block) {
+        return new Statements(block.getStatements().stream().map(this::statement).toArray(Statement[]::new));
+    }
+
+    // user functions are compiled the first time there called
+    private Block function(FunctionNode function) {
+        var compiled = functions.get(function.getName());
+        if (compiled == null) {
+            compiled = new Block(function.getStatements().stream().map(this::statement).toArray(Statement[]::new),
+                    Optional.empty());
+            functions.put(function.getName(), compiled);
+        }
+        return compiled;
+    }
+
+    private static boolean isNormal(ReturnType returnType) {
+        return returnType.getReturnKind() == ReturnType.ReturnKind.Normal;
+    }
+
+    // a compiled begin/end/normal block or function body
+    public class Block {
+        private Statement[] statements;
+        private Optional<Expression> condition;
+
+        private Block(Statement[] statements, Optional<Expression> condition) {
+            this.statements = statements;
+            this.condition = condition;
+        }
+
+        // whether the condition of the block (if any) is true
+        public boolean shouldRun() {
+            return condition.map(c -> Interpreter.isTruthy(c.evaluate(null))).orElse(true);
+        }
+
+        public ReturnType execute(Frame locals) {
+            for (var statement : statements) {
+                var returnType = statement.execute(locals);
+                if (!isNormal(returnType)) {
+                    return returnType;
+                }
+            }
+            return ReturnType.NORMAL;
+        }
+    }
+
+    private static class Statements implements Statement {
+        private Statement[] statements;
+
+        public Statements(Statement[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            for (var statement : statements) {
+                var returnType = statement.execute(locals);
+                if (!isNormal(returnType)) {
+                    return returnType;
+                }
+            }
+            return ReturnType.NORMAL;
+        }
+    }
+
+    private static class ExpressionStatement implements Statement {
+        private Expression expression;
+
+        public ExpressionStatement(Expression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            expression.evaluate(locals);
+            return ReturnType.NORMAL;
+        }
+    }
+
+    private class Return implements Statement {
+        private Optional<Expression> value;
+
+        public Return(Optional<Expression> value) {
+            this.value = value;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            return value.map(v -> new ReturnType(InterpreterDataType.scalarCopy(v.evaluate(locals)),
+                    ReturnType.ReturnKind.Return))
+                    .orElse(ReturnType.RETURN);
+        }
+    }
+
+    private static class While implements Statement {
+        private Expression condition;
+        private Statements body;
+
+        public While(Expression condition, Statements body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            while (Interpreter.isTruthy(condition.evaluate(locals))) {
+                var returnType = body.execute(locals);
+                if (returnType.getReturnKind() == ReturnType.ReturnKind.Return) {
+                    return returnType;
+                } else if (returnType.getReturnKind() == ReturnType.ReturnKind.Break) {
+                    break;
+                }
+            }
+            return ReturnType.NORMAL;
+        }
+    }
+
+    private static class DoWhile implements Statement {
+        private Expression condition;
+        private Statements body;
+
+        public DoWhile(Expression condition, Statements body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            do {
+                var returnType = body.execute(locals);
+                if (returnType.getReturnKind() == ReturnType.ReturnKind.Return) {
+                    return returnType;
+                } else if (returnType.getReturnKind() == ReturnType.ReturnKind.Break) {
+                    break;
+                }
+            } while (Interpreter.isTruthy(condition.evaluate(locals)));
+            return ReturnType.NORMAL;
+        }
+    }
+
+    private static class For implements Statement {
+        private Optional<Expression> init;
+        private Optional<Expression> condition;
+        private Optional<Expression> increment;
+        private Statements body;
+
+        public For(Optional<Expression> init, Optional<Expression> condition, Optional<Expression> increment,
+                Statements body) {
+            this.init = init;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            if (init.isPresent()) {
+                init.get().evaluate(locals);
+            }
+            while (condition.isEmpty() || Interpreter.isTruthy(condition.get().evaluate(locals))) {
+                var returnType = body.execute(locals);
+                if (returnType.getReturnKind() == ReturnType.ReturnKind.Return) {
+                    return returnType;
+                } else if (returnType.getReturnKind() == ReturnType.ReturnKind.Break) {
+                    break;
+                }
+                if (increment.isPresent()) {
+                    increment.get().evaluate(locals);
+                }
+            }
+            return ReturnType.NORMAL;
+        }
+    }
+
+    private class ForEach implements Statement {
+        private String index;
+        private VariableReferenceNode array;
+        private Statements body;
+
+        public ForEach(String index, VariableReferenceNode array, Statements body) {
+            this.index = index;
+            this.array = array;
+            this.body = body;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            var iterable = runtime.getArray(array, locals);
+            for (var key : iterable.getKeysList()) {
+                // indices are global and local in awk even if declared earlier in a local scope
+                // so global == local == index
+                var indexVar = runtime.getGlobal(index);
+                if (locals != null) {
+                    locals.put(index, indexVar);
+                }
+                indexVar.setContents(key);
+                var returnType = body.execute(locals);
+                if (returnType.getReturnKind() == ReturnType.ReturnKind.Return) {
+                    return returnType;
+                } else if (returnType.getReturnKind() == ReturnType.ReturnKind.Break) {
+                    break;
+                }
+            }
+            return ReturnType.NORMAL;
+        }
+    }
+
+    private class If implements Statement {
+        private Expression condition;
+        private Statements then;
+        private Optional<Statement> otherwise;
+
+        public If(Expression condition, Statements then, Optional<Statement> otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            if (Interpreter.isTruthy(condition.evaluate(locals))) {
+                return then.execute(locals);
+            }
+            return otherwise.isPresent() ? otherwise.get().execute(locals) : ReturnType.NORMAL;
+        }
+    }
+
+    private class Delete implements Statement {
+        private VariableReferenceNode array;
+        private Optional<Expression> index;
+
+        public Delete(VariableReferenceNode array, Optional<Expression> index) {
+            this.array = array;
+            this.index = index;
+        }
+
+        @Override
+        public ReturnType execute(Frame locals) {
+            var iterable = runtime.getArray(array, locals);
+            if (index.isPresent()) {
+                iterable.get(index.get().evaluate(locals).getContents(runtime.conversionFormat)).setContents("");
+            } else {
+                iterable.clear();
+            }
+            return ReturnType.NORMAL;
+        }
+    }
+
+    private static class Constant implements Expression {
+        private ConstantNode value;
+
+        public Constant(ConstantNode value) {
+            this.value = value;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return value.newValue();
+        }
+    }
+
+    private class Variable implements Expression {
+        private VariableReferenceNode variable;
+
+        public Variable(VariableReferenceNode variable) {
+            this.variable = variable;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return runtime.getVariable(variable, locals);
+        }
+    }
+
+    private class ArrayElement implements Expression {
+        private VariableReferenceNode array;
+        private Expression index;
+
+        public ArrayElement(VariableReferenceNode array, Expression index) {
+            this.array = array;
+            this.index = index;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var key = index.evaluate(locals).getContents(runtime.conversionFormat);
+            return runtime.getArray(array, locals).get(key);
+        }
+    }
+
+    private class Field implements Expression {
+        private OperationNode node;
+        private Expression index;
+
+        public Field(OperationNode node, Expression index) {
+            this.node = node;
+            this.index = index;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var field = runtime.parse(index.evaluate(locals));
+            // negative index is not allowed (checked here as opposed to in Record::Get)
+            if (field < 0) {
+                throw new AwkRuntimeError.NegativeFieldIndexError(node, (int) field);
+            }
+            return runtime.getRecord().Get((int) field);
+        }
+    }
+
+    private static class Assignment implements Expression {
+        private Expression target;
+        private Expression value;
+
+        public Assignment(Expression target, Expression value) {
+            this.target = target;
+            this.value = value;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var newValue = value.evaluate(locals);
+            target.evaluate(locals).setContents(newValue);
+            return newValue;
+        }
+    }
+
+    private class Increment implements Expression {
+        private Expression variable;
+        private int by;
+        private boolean pre;
+
+        public Increment(Expression variable, int by, boolean pre) {
+            this.variable = variable;
+            this.by = by;
+            this.pre = pre;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var value = variable.evaluate(locals);
+            var oldValue = runtime.parse(value);
+            var newValue = oldValue + by;
+            value.setContents(newValue);
+            // same as the interpreter
+            return new InterpreterDataType(pre ? oldValue : newValue);
+        }
+    }
+
+    private class Call implements Expression {
+        private FunctionCallNode call;
+        private List<Expression> arguments;
+        // which arguments dont have to be cloned (see Interpreter.isTemporary)
+        private boolean[] temporary;
+        // the function and (for user functions) its compiled body are found the first
+        // time the call is run, so calling a function that doesnt exist is still only
+        // an error if the call happens
+        private FunctionNode definition;
+        private Block body;
+
+        public Call(FunctionCallNode call, List<Expression> arguments) {
+            this.call = call;
+            this.arguments = arguments;
+            temporary = new boolean[arguments.size()];
+            int i = 0;
+            for (var argument : call.getParameters()) {
+                temporary[i++] = Interpreter.isTemporary(argument);
+            }
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            if (definition == null) {
+                var found = lookup(call.getFunctionName());
+                checkArity(found, arguments.size(), call.getFunctionName());
+                if (!(found instanceof BuiltInFunctionDefinitionNode)) {
+                    body = function(found);
+                }
+                definition = found;
+            }
+            // for builtins we do not clone so [g?]sub works
+            var builtin = body == null;
+            var args = new ArrayList<InterpreterDataType>(arguments.size());
+            int i = 0;
+            for (var argument : arguments) {
+                var value = argument.evaluate(locals);
+                args.add(builtin || temporary[i++] ? value : value.Clone());
+            }
+            return builtin ? invoke(definition, args) : invoke(definition, body, args);
+        }
+    }
+
+    // finds what function name is (builtin or user)
+    public FunctionNode lookup(String name) {
+        return Optional.ofNullable(runtime.getFunction(name))
+                .orElseThrow(() -> new AwkRuntimeError.FunctionNotFoundError(name));
+    }
+
+    public void checkArity(FunctionNode definition, int arguments, String name) {
+        runtime.checkArity(definition.getParameters(), arguments,
+                definition instanceof BuiltInFunctionDefinitionNode builtin && builtin.getVaridiac(), name);
+    }
+
+    // calls a function with arguments that have already been evaluated (and cloned
+    // for user functions), the arity should already have been checked
+    public InterpreterDataType invoke(FunctionNode definition, List<InterpreterDataType> args) {
+        if (definition instanceof BuiltInFunctionDefinitionNode builtin) {
+            return new InterpreterDataType(
+                    builtin.getExecute().apply(runtime.bindArgs(builtin.getParameters(), args, builtin.getVaridiac())));
+        }
+        return invoke(definition, function(definition), args);
+    }
+
+    // calls a user function whose body is already compiled
+    private InterpreterDataType invoke(FunctionNode definition, Block body, List<InterpreterDataType> args) {
+        var frame = frames.push(definition.getParameters());
+        try {
+            for (int i = 0; i < args.size(); i++) {
+                frame.set(i, args.get(i));
+            }
+            var returnValue = body.execute(frame);
+            return switch (returnValue.getReturnKind()) {
+                case Normal, Return -> returnValue.getReturnValue().orElseGet(InterpreterDataType::new);
+                default -> throw new AwkRuntimeError.ReturnInOuterBlockError(returnValue);
+            };
+        } finally {
+            frames.pop();
+        }
+    }
+
+    private static class Ternary implements Expression {
+        private Expression condition;
+        private Expression then;
+        private Expression otherwise;
+
+        public Ternary(Expression condition, Expression then, Expression otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return Interpreter.isTruthy(condition.evaluate(locals)) ? then.evaluate(locals)
+                    : otherwise.evaluate(locals);
+        }
+    }
+
+    private static InterpreterDataType bool(boolean value) {
+        return new InterpreterDataType(value ? "1" : "0");
+    }
+
+    // same as the interpreter
+    private int compare(InterpreterDataType x, InterpreterDataType y) {
+        return runtime.compare(x, y);
+    }
+
+    private abstract class Binary implements Expression {
+        protected Expression left;
+        protected Expression right;
+
+        public Binary(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private final class Add extends Binary {
+        public Add(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = runtime.parse(left.evaluate(locals));
+            return new InterpreterDataType(x + runtime.parse(right.evaluate(locals)));
+        }
+    }
+
+    private final class Subtract extends Binary {
+        public Subtract(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = runtime.parse(left.evaluate(locals));
+            return new InterpreterDataType(x - runtime.parse(right.evaluate(locals)));
+        }
+    }
+
+    private final class Multiply extends Binary {
+        public Multiply(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = runtime.parse(left.evaluate(locals));
+            return new InterpreterDataType(x * runtime.parse(right.evaluate(locals)));
+        }
+    }
+
+    private final class Divide extends Binary {
+        public Divide(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = runtime.parse(left.evaluate(locals));
+            return new InterpreterDataType(x / runtime.parse(right.evaluate(locals)));
+        }
+    }
+
+    private final class Modulo extends Binary {
+        public Modulo(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = runtime.parse(left.evaluate(locals));
+            return new InterpreterDataType(x % runtime.parse(right.evaluate(locals)));
+        }
+    }
+
+    private final class Exponent extends Binary {
+        public Exponent(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = runtime.parse(left.evaluate(locals));
+            return new InterpreterDataType(Math.pow(x, runtime.parse(right.evaluate(locals))));
+        }
+    }
+
+    private final class Negate implements Expression {
+        private Expression value;
+
+        public Negate(Expression value) {
+            this.value = value;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return new InterpreterDataType(-runtime.parse(value.evaluate(locals)));
+        }
+    }
+
+    private final class Plus implements Expression {
+        private Expression value;
+
+        public Plus(Expression value) {
+            this.value = value;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return new InterpreterDataType(runtime.parse(value.evaluate(locals)));
+        }
+    }
+
+    private final class And extends Binary {
+        public And(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return bool(Interpreter.isTruthy(left.evaluate(locals)) && Interpreter.isTruthy(right.evaluate(locals)));
+        }
+    }
+
+    private final class Or extends Binary {
+        public Or(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return bool(Interpreter.isTruthy(left.evaluate(locals)) || Interpreter.isTruthy(right.evaluate(locals)));
+        }
+    }
+
+    private static final class Not implements Expression {
+        private Expression value;
+
+        public Not(Expression value) {
+            this.value = value;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return bool(!Interpreter.isTruthy(value.evaluate(locals)));
+        }
+    }
+
+    private final class Concatenation extends Binary {
+        public Concatenation(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = left.evaluate(locals).getContents(runtime.conversionFormat);
+            return new InterpreterDataType(x + right.evaluate(locals).getContents(runtime.conversionFormat));
+        }
+    }
+
+    private final class Equal extends Binary {
+        public Equal(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = left.evaluate(locals);
+            return bool(compare(x, right.evaluate(locals)) == 0);
+        }
+    }
+
+    private final class NotEqual extends Binary {
+        public NotEqual(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = left.evaluate(locals);
+            return bool(compare(x, right.evaluate(locals)) != 0);
+        }
+    }
+
+    private final class Less extends Binary {
+        public Less(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = left.evaluate(locals);
+            return bool(compare(x, right.evaluate(locals)) < 0);
+        }
+    }
+
+    private final class LessEqual extends Binary {
+        public LessEqual(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = left.evaluate(locals);
+            return bool(compare(x, right.evaluate(locals)) <= 0);
+        }
+    }
+
+    private final class Greater extends Binary {
+        public Greater(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = left.evaluate(locals);
+            return bool(compare(x, right.evaluate(locals)) > 0);
+        }
+    }
+
+    private final class GreaterEqual extends Binary {
+        public GreaterEqual(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var x = left.evaluate(locals);
+            return bool(compare(x, right.evaluate(locals)) >= 0);
+        }
+    }
+
+    // ~ the whole string has to match
+    private final class Match implements Expression {
+        private Expression string;
+        // regex literals are already compiled, anything else goes through the cache
+        private Pattern literal;
+        private Expression pattern;
+
+        public Match(Expression string, Node patternNode, Expression pattern) {
+            this.string = string;
+            this.pattern = pattern;
+            if (patternNode instanceof PatternNode p && p.getCompiled().isPresent()) {
+                literal = p.getCompiled().get();
+            }
+        }
+
+        public boolean matches(Frame locals) {
+            var haystack = string.evaluate(locals).getCharSequence(runtime.conversionFormat);
+            var regex = literal != null ? literal
+                    : runtime.regexes.get(pattern.evaluate(locals).getContents(runtime.conversionFormat));
+            return regex.matcher(haystack).matches();
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return bool(matches(locals));
+        }
+    }
+
+    private static final class NotMatch implements Expression {
+        private Match match;
+
+        public NotMatch(Match match) {
+            this.match = match;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            return bool(!match.matches(locals));
+        }
+    }
+
+    private final class In implements Expression {
+        private Expression index;
+        private Node array;
+
+        public In(Expression index, Node array) {
+            this.index = index;
+            this.array = array;
+        }
+
+        @Override
+        public InterpreterDataType evaluate(Frame locals) {
+            var key = index.evaluate(locals).getContents(runtime.conversionFormat);
+            // through error if the index is present since we do not support
+            // mutlidimensional arrays
+            if (array instanceof VariableReferenceNode v && v.getIndex().isEmpty()) {
+                return bool(runtime.getArray(v, locals).contains(key));
+            }
+            throw new AwkRuntimeError.ExpectedArrayError(key, "");
+        }
+    }
+}
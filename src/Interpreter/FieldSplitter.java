@@ -0,0 +1,185 @@
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+// splits records into fields based on a field separator (FS)
+// working out how to split (and compiling the regex if its needed) is done once
+// when the splitter is made, so as long as FS doesnt change we can keep reusing
+// the same splitter
+public class FieldSplitter {
+    private enum Kind {
+        // the default FS " " fields are separated by runs of blanks (space, tab,
+        // newline) and leading/trailing blanks are ignored
+        Whitespace,
+        // any other single character is used as is (not as a regex)
+        Character,
+        // an empty FS makes every character its own field
+        EachCharacter,
+        // anything longer is a regex
+        Regex
+    }
+
+    // where each field starts and ends in the record
+    // field n (1-based) is from starts[n - 1] to ends[n - 1]
+    // its kept around between splits, so we dont allocate new arrays for each
+    // record
+    public static class Bounds {
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+
+        public int start(int field) {
+            return starts[field];
+        }
+
+        public int end(int field) {
+            return ends[field];
+        }
+
+        private void set(int field, int start, int end) {
+            if (field == starts.length) {
+                starts = Arrays.copyOf(starts, field * 2);
+                ends = Arrays.copyOf(ends, field * 2);
+            }
+            starts[field] = start;
+            ends[field] = end;
+        }
+    }
+
+    private String separator;
+    private Kind kind;
+    private char character;
+    private Pattern pattern;
+
+    public FieldSplitter(String separator) {
+        this.separator = separator;
+        if (separator.equals(" ")) {
+            kind = Kind.Whitespace;
+        } else if (separator.isEmpty()) {
+            kind = Kind.EachCharacter;
+        } else if (separator.length() == 1) {
+            kind = Kind.Character;
+            character = separator.charAt(0);
+        } else {
+            kind = Kind.Regex;
+            pattern = Pattern.compile(separator);
+        }
+    }
+
+    // in paragraph mode (RS is empty, see RecordSeparator) newlines separate fields
+    // as well as FS, which the default already does
+    public static String withNewlines(String separator) {
+        if (separator.equals(" ") || separator.isEmpty()) {
+            return separator;
+        }
+        return "(" + (separator.length() == 1 ? Pattern.quote(separator) : separator) + ")|\n";
+    }
+
+    public String getSeparator() {
+        return separator;
+    }
+
+    // gives back the splitter to use for separator, only making a new one if the
+    // separator is different than the one the previous splitter was made for
+    public static FieldSplitter forSeparator(FieldSplitter previous, String separator) {
+        return previous.separator.equals(separator) ? previous : new FieldSplitter(separator);
+    }
+
+    // splits record putting where each field is into bounds and returns the number
+    // of fields
+    public int split(CharSequence record, Bounds bounds) {
+        return split(record, bounds, Integer.MAX_VALUE);
+    }
+
+    // like split, but stops once limit fields are found, so if we know only the first
+    // few fields are needed we dont have to look through the rest of the record
+    public int split(CharSequence record, Bounds bounds, int limit) {
+        // an empty record has no fields no matter what the separator is
+        if (record.length() == 0 || limit == 0) {
+            return 0;
+        }
+        return switch (kind) {
+            case Whitespace -> splitWhitespace(record, bounds, limit);
+            case Character -> splitCharacter(record, bounds, limit);
+            case EachCharacter -> splitEachCharacter(record, bounds, limit);
+            case Regex -> splitRegex(record, bounds, limit);
+        };
+    }
+
+    // splits record into a new array of strings (used by the split builtin)
+    public String[] split(String record) {
+        var bounds = new Bounds();
+        var fields = new String[split(record, bounds)];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = record.substring(bounds.start(i), bounds.end(i));
+        }
+        return fields;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n';
+    }
+
+    private int splitWhitespace(CharSequence record, Bounds bounds, int limit) {
+        int fields = 0;
+        int length = record.length();
+        int i = 0;
+        while (fields < limit) {
+            while (i < length && isBlank(record.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                return fields;
+            }
+            int start = i;
+            while (i < length && !isBlank(record.charAt(i))) {
+                i++;
+            }
+            bounds.set(fields++, start, i);
+        }
+        return fields;
+    }
+
+    private int splitCharacter(CharSequence record, Bounds bounds, int limit) {
+        int fields = 0;
+        int start = 0;
+        int length = record.length();
+        for (int i = 0; i < length; i++) {
+            if (record.charAt(i) == character) {
+                bounds.set(fields++, start, i);
+                if (fields == limit) {
+                    return fields;
+                }
+                start = i + 1;
+            }
+        }
+        // unlike String::split trailing empty fields are kept
+        bounds.set(fields++, start, length);
+        return fields;
+    }
+
+    private int splitEachCharacter(CharSequence record, Bounds bounds, int limit) {
+        int length = Math.min(record.length(), limit);
+        for (int i = 0; i < length; i++) {
+            bounds.set(i, i, i + 1);
+        }
+        return length;
+    }
+
+    private int splitRegex(CharSequence record, Bounds bounds, int limit) {
+        int fields = 0;
+        int start = 0;
+        var matcher = pattern.matcher(record);
+        while (matcher.find()) {
+            // a separator that matches nothing does not separate anything
+            if (matcher.end() == matcher.start()) {
+                continue;
+            }
+            bounds.set(fields++, start, matcher.start());
+            if (fields == limit) {
+                return fields;
+            }
+            start = matcher.end();
+        }
+        bounds.set(fields++, start, record.length());
+        return fields;
+    }
+}
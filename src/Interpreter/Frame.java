@@ -0,0 +1,95 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// the locals of a user function call (its parameters)
+// parameters are resolved to slots (see VariableResolver), so looking one up is
+// just indexing into values, names are only used for the few things that still
+// look locals up by name
+// frames are reused for each call (see Frame.Stack), so calling a function
+// doesnt have to allocate anything for its locals
+public class Frame {
+    private List<String> names = List.of();
+    private InterpreterDataType[] values;
+    private int size = 0;
+    // locals that arent parameters (the index of a for in, see ProcessStatement),
+    // only made if there are any
+    private HashMap<String, InterpreterDataType> others = null;
+
+    private Frame(int capacity) {
+        values = new InterpreterDataType[capacity];
+    }
+
+    // a frame where everything is looked up by name (for the unit tests, which
+    // make there own locals)
+    public static Frame of(HashMap<String, InterpreterDataType> locals) {
+        if (locals == null) {
+            return null;
+        }
+        var frame = new Frame(0);
+        frame.others = locals;
+        return frame;
+    }
+
+    public InterpreterDataType get(int slot) {
+        return values[slot];
+    }
+
+    public void set(int slot, InterpreterDataType value) {
+        values[slot] = value;
+    }
+
+    // null if there is no local called name
+    public InterpreterDataType get(String name) {
+        int slot = names.indexOf(name);
+        if (slot != -1) {
+            return values[slot];
+        }
+        return others == null ? null : others.get(name);
+    }
+
+    public void put(String name, InterpreterDataType value) {
+        int slot = names.indexOf(name);
+        if (slot != -1) {
+            values[slot] = value;
+        } else {
+            if (others == null) {
+                others = new HashMap<>();
+            }
+            others.put(name, value);
+        }
+    }
+
+    // the frames of the function calls that are running, as functions return in the
+    // opposite order there called the frames can be reused for the next calls
+    public static class Stack {
+        private Frame[] frames = new Frame[16];
+        private int depth = 0;
+
+        // a frame for calling a function with parameters, the caller fills in the
+        // values (and has to pop it when the function returns)
+        public Frame push(List<String> parameters) {
+            if (depth == frames.length) {
+                frames = Arrays.copyOf(frames, depth * 2);
+            }
+            var frame = frames[depth];
+            if (frame == null) {
+                frame = new Frame(Math.max(parameters.size(), 4));
+                frames[depth] = frame;
+            } else if (frame.values.length < parameters.size()) {
+                frame.values = new InterpreterDataType[parameters.size()];
+            }
+            depth++;
+            frame.names = parameters;
+            frame.size = parameters.size();
+            return frame;
+        }
+
+        public void pop() {
+            var frame = frames[--depth];
+            // so values from the call can be garbage collected
+            Arrays.fill(frame.values, 0, frame.size, null);
+            frame.others = null;
+        }
+    }
+}
@@ -1,16 +1,24 @@
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 
 public class Interpreter {
     @FunctionalInterface
@@ -28,127 +36,461 @@ public class Interpreter {
     // for managing $0 ,$n
     // public for testing
     class Record {
-        private LinkedList<Field> fields;
+        // fields are kept in an array so getting $n is just indexing into it
+        // the field objects are reused between records, only the first count of them
+        // are part of the current record
+        private Field[] fields = new Field[0];
+        private int count = 0;
+        // $0 is only split into fields once a field or NF is actually needed, so
+        // programs that only look at the whole line never split
+        private boolean split = false;
+        // assigning to a field (or NF) only marks $0 as out of date, it gets joined
+        // back together (with OFS) the next time its read, so changing a bunch of fields
+        // only joins the record once
+        private boolean dirty = false;
+        // the splitter for FS when the record was set, as changing FS only effects the
+        // next record
+        private FieldSplitter recordSplitter;
         private HeadField record;
+        private NumberOfFields numberOfFields = new NumberOfFields();
+        // the record as it was read, which $0 and the fields are parts of until there
+        // used as strings
+        private CharSequence input;
 
         public Record(String record) {
-            ProcessRecord(record);
+            this.record = new HeadField(record);
+            variables.put("NF", numberOfFields);
+            setRecord(record);
         }
 
-        private void ProcessRecord(String record) {
-            this.record = new HeadField(record);
-            String[] fields = record.split(getGlobal("FS").getContents());
-            variables.put("NF", new InterpreterDataType(fields.length));
-            this.fields = Stream.of(fields).map(f -> new Field(f))
-                    .collect(Collectors.toCollection(() -> new LinkedList<>()));
+        // makes record the new $0, without splitting it
+        public void setRecord(CharSequence record) {
+            input = record;
+            this.record.updateRecord(record);
+            resetFields();
+        }
+
+        // makes whatever is still part of a RecordBytes into strings, as reading
+        // another record (without it becoming $0, like getline var) reuses its bytes
+        private void detach() {
+            if (!(input instanceof RecordBytes)) {
+                return;
+            }
+            var contents = input.toString();
+            if (record.source == input) {
+                record.source = contents;
+            }
+            for (int i = 0; i < count; i++) {
+                if (fields[i].source == input) {
+                    fields[i].source = contents;
+                }
+            }
+            input = contents;
+        }
+
+        private void resetFields() {
+            // the splitter (and any regex it needs) is only made again if FS changed
+            var separator = getGlobal("FS").getContents(conversionFormat);
+            if (getGlobal("RS").getContents(conversionFormat).isEmpty()) {
+                separator = FieldSplitter.withNewlines(separator);
+            }
+            splitter = FieldSplitter.forSeparator(splitter, separator);
+            recordSplitter = splitter;
+            split = false;
+            dirty = false;
+        }
+
+        private void ensureSplit() {
+            if (split) {
+                return;
+            }
+            split = true;
+            var contents = record.getCharSequence(conversionFormat);
+            setCount(recordSplitter.split(contents, fieldBounds, fieldLimit));
+            for (int i = 0; i < count; i++) {
+                fields[i].updateField(contents, fieldBounds.start(i), fieldBounds.end(i));
+            }
+        }
+
+        // makes the record have count fields, any new fields are empty
+        private void setCount(int count) {
+            if (count > fields.length) {
+                int oldLength = fields.length;
+                fields = Arrays.copyOf(fields, Math.max(count, oldLength * 2));
+                for (int i = oldLength; i < fields.length; i++) {
+                    fields[i] = new Field("", i);
+                }
+            }
+            for (int i = this.count; i < count; i++) {
+                fields[i].updateField("");
+            }
+            this.count = count;
         }
 
         // we assume non negative b/c this will only be used in GetIDT and we can verify
         // that there
         public InterpreterDataType Get(int index) {
-            return switch (index) {
-                case 0 -> record;
-                default ->
-                    Optional.ofExceptionable(() -> fields.get(index - 1)).orElseGet(() -> {
-                        // the second you update the record any witespace from record input ges removed
-                        record.updateRecord(fields.stream().map(Field::getContents).collect(Collectors.joining(" ")));
-                        Stream.iterate(fields.size() - 2 - index, n -> n < index - 1, n -> n + 1)
-                                .map(f -> new Field("")).forEach(f -> fields.add(f));
-                        return fields.get(index - 1);
-                    });
+            if (index == 0) {
+                return record;
+            }
+            ensureSplit();
+            if (index <= count) {
+                return fields[index - 1];
+            }
+            // getting a field past the end of the record doesnt change the record, only
+            // assigning to it does
+            return new Field("", index - 1);
+        }
 
-            };
+        // the second you update the record any witespace from record input ges removed
+        private void rebuildRecord() {
+            var separator = getGlobal("OFS").getContents(conversionFormat);
+            var rebuilt = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    rebuilt.append(separator);
+                }
+                rebuilt.append(fields[i].getContents(conversionFormat));
+            }
+            record.updateRecord(rebuilt.toString());
+            dirty = false;
         }
 
         // reprsents $1 overides IDT, so setting it can do special things
         private class HeadField extends InterpreterDataType {
+            // the record as it was read if it isnt a string yet (see RecordBytes)
+            private CharSequence source = null;
+
             public HeadField(String contents) {
                 super(contents);
             }
 
-            private void updateRecord(String input) {
-                super.setContents(input);
+            private void updateRecord(CharSequence input) {
+                if (input instanceof String string) {
+                    source = null;
+                    super.setContents(string);
+                } else {
+                    super.setContents("");
+                    source = input;
+                }
+            }
+
+            @Override
+            public String getContents(String conversionFormat) {
+                if (dirty) {
+                    rebuildRecord();
+                }
+                if (source != null) {
+                    setString(source.toString());
+                    source = null;
+                }
+                return super.getContents(conversionFormat);
+            }
+
+            @Override
+            public CharSequence getCharSequence(String conversionFormat) {
+                return source != null && !dirty ? source : getContents(conversionFormat);
+            }
+
+            @Override
+            public boolean isNumber() {
+                if (source != null && !dirty && !isParsed()) {
+                    boolean isNumber = NumberParser.isNumber(source);
+                    setParsed(isNumber, isNumber ? NumberParser.parse(source) : 0);
+                }
+                return super.isNumber();
             }
 
             @Override
             public void setContents(String contents) {
                 // we only resplit on fs if we update whole record
+                source = null;
+                super.setContents(contents);
+                resetFields();
+            }
+
+            @Override
+            public void setContents(double contents) {
+                source = null;
                 super.setContents(contents);
-                ProcessRecord(contents);
+                resetFields();
             }
 
             // cloning a $0 means you get the contents but not tha ability to modify the
             // current record
             @Override
             public InterpreterDataType Clone() {
-                return super.Clone();
+                return new InterpreterDataType(getContents(conversionFormat));
+            }
+
+            @Override
+            public String toString() {
+                return getContents(conversionFormat);
             }
         }
 
         // reprsents $n overides IDT, so setting it can do special things
         private class Field extends InterpreterDataType {
-            public Field(String contents) {
+            // 0-based index of this field in fields
+            private int index;
+            // until the field is used as a string its only where it is in the record, so
+            // numbers can be parsed straight out of the record (see NumberParser) without
+            // making a string for the field
+            private CharSequence source = null;
+            private int start;
+            private int end;
+
+            public Field(String contents, int index) {
                 super(contents);
+                this.index = index;
+            }
+
+            private void updateField(String input) {
+                source = null;
+                super.setContents(input);
+            }
 
+            private void updateField(CharSequence record, int start, int end) {
+                super.setContents("");
+                source = record;
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            public String getContents(String conversionFormat) {
+                if (source != null) {
+                    setString(source.subSequence(start, end).toString());
+                    source = null;
+                }
+                return super.getContents(conversionFormat);
+            }
+
+            @Override
+            public CharSequence getCharSequence(String conversionFormat) {
+                if (source instanceof RecordBytes bytes) {
+                    return bytes.subSequence(start, end);
+                }
+                return getContents(conversionFormat);
+            }
+
+            @Override
+            public boolean isNumber() {
+                if (source != null && !isParsed()) {
+                    boolean isNumber = NumberParser.isNumber(source, start, end);
+                    setParsed(isNumber, isNumber ? NumberParser.parse(source, start, end) : 0);
+                }
+                return super.isNumber();
             }
 
             @Override
             public void setContents(String contents) {
+                source = null;
                 super.setContents(contents);
-                // the second you update the record any witespace from record input ges removed
-                record.updateRecord(fields.stream().map(Field::getContents).collect(Collectors.joining(" ")));
+                assigned();
+            }
 
+            @Override
+            public void setContents(double contents) {
+                source = null;
+                super.setContents(contents);
+                assigned();
+            }
+
+            private void assigned() {
+                // assigning past the end of the record adds this field (and empty fields
+                // for any in between)
+                if (index >= count) {
+                    setCount(index + 1);
+                    fields[index] = this;
+                }
+                dirty = true;
             }
 
             // cloning a $n means you get the contents but not tha ability to modify the
             // current record
             @Override
             public InterpreterDataType Clone() {
+                getContents(conversionFormat);
                 return super.Clone();
             }
 
         }
+
+        // reprsents NF, reading it splits the record, setting it adds or removes fields
+        private class NumberOfFields extends InterpreterDataType {
+            @Override
+            public String getContents(String conversionFormat) {
+                ensureSplit();
+                return String.valueOf(count);
+            }
+
+            @Override
+            public boolean isNumber() {
+                return true;
+            }
+
+            @Override
+            public double getNumber() {
+                ensureSplit();
+                return count;
+            }
+
+            @Override
+            public void setContents(String contents) {
+                setContents(parse(new InterpreterDataType(contents)));
+            }
+
+            @Override
+            public void setContents(double contents) {
+                if (contents < 0) {
+                    throw new AwkRuntimeError.NegativeNumberOfFieldsError(contents);
+                }
+                ensureSplit();
+                setCount((int) contents);
+                dirty = true;
+            }
+
+            @Override
+            public InterpreterDataType Clone() {
+                return new InterpreterDataType(getContents(conversionFormat));
+            }
+
+            @Override
+            public String toString() {
+                return getContents(conversionFormat);
+            }
+        }
     }
 
     private class LineManager {
-        private List<String> lines;
+        // records are pulled out of the input one at a time as they are needed
+        // instead of reading the whole input up front
+        private Optional<RecordSource> reader = Optional.empty();
+        // the files that still need to be read after the current one
+        private LinkedList<String> files;
+        // the name of the current input (what FILENAME gets set to)
+        private String name = "";
+        // FILENAME and FNR only get updated once we actually read a record from a new
+        // file, so they dont change before the first record is read
+        private boolean newFile = false;
+        // the separator for RS, changing RS effects the next record read
+        private RecordSeparator separator = null;
         // we could keep track of the number of lines by using NR, but this much easier
         // and more efficient b/c no string->number parsing
         // int linesProcessed = 0;
 
-        public LineManager(List<String> lines) {
-            this.lines = lines;
+        // files are only opened when the first record is read from them, so BEGIN
+        // runs (and a program that never reads input works) even if a file is missing
+        public LineManager(List<String> files) {
+            this.files = new LinkedList<>(files);
+        }
+
+        public LineManager(RecordSource reader, String name) {
+            this.files = new LinkedList<>();
+            this.reader = Optional.of(reader);
+            this.name = name;
+            newFile = true;
+        }
+
+        private void open(String file) throws IOException {
+            newFile = true;
+            if (file.equals("-")) {
+                // stdin gets a bigger buffer, the reader only waits for whatever input is
+                // available, not for the buffer to fill up, so records get processed as
+                // soon as they come in
+                name = "";
+                reader = Optional.of(new RecordReader(new InputStreamReader(System.in), 1 << 16, flushOutput));
+            } else {
+                // set the name first so if opening fails the error is about the right file
+                name = file;
+                var path = Paths.get(file);
+                // regular files are mapped into memory instead of read, anything else (pipes,
+                // devices) cant be (the reader for them handles any RS, the mapped one passes
+                // anything other than a single byte onto one)
+                if (Files.isRegularFile(path) && Charset.defaultCharset().equals(StandardCharsets.UTF_8)) {
+                    reader = Optional.of(new MappedRecordReader(path));
+                } else {
+                    reader = Optional.of(
+                            new RecordReader(new InputStreamReader(Files.newInputStream(path)), 8192, flushOutput));
+                }
+            }
+        }
+
+        private String displayName() {
+            return name.isEmpty() ? "standard input" : name;
+        }
+
+        // stops reading the current file (without reading the rest of it)
+        public void skipFile() {
+            reader.ifPresent(r -> {
+                try {
+                    r.close();
+                } catch (IOException e) {
+                    throw new AwkRuntimeError.InputError(displayName(), e);
+                }
+            });
+            reader = Optional.empty();
+        }
+
+        private Optional<CharSequence> nextRecord() {
+            try {
+                while (true) {
+                    if (reader.isEmpty()) {
+                        if (files.isEmpty()) {
+                            return Optional.empty();
+                        }
+                        open(files.pop());
+                    }
+                    separator = RecordSeparator.forSeparator(separator, getGlobal("RS").getContents(conversionFormat));
+                    var record = reader.get().readRecord(separator);
+                    if (record.isPresent()) {
+                        if (newFile) {
+                            getGlobal("FILENAME").setContents(name);
+                            getGlobal("FNR").setContents("0");
+                            newFile = false;
+                        }
+                        getGlobal("RT").setContents(reader.get().getTerminator());
+                        return record;
+                    }
+                    // this file is done move on to the next one
+                    skipFile();
+                }
+            } catch (IOException e) {
+                throw new AwkRuntimeError.InputError(displayName(), e);
+            }
+        }
+
+        private void increment(String counter) {
+            var nref = getGlobal(counter);
+            // if this is first record "" gets parsed to 0 (0 + 1) = 1
+            nref.setContents(nref.isNumber() ? nref.getNumber() + 1 : 1);
         }
 
         // used for getline with variable
         public boolean assign(InterpreterDataType var) {
-            var left = !lines.isEmpty();
-            if (left) {
-                var.setContents(lines.remove(0));
+            record.detach();
+            var line = nextRecord();
+            line.ifPresent(l -> var.setContents(l.toString()));
+            return line.isPresent();
+        }
+
+        // reads the next record and counts it in NR and FNR, without making it $0
+        public Optional<CharSequence> advance() {
+            var line = nextRecord();
+            if (line.isPresent()) {
+                increment("NR");
+                increment("FNR");
             }
-            return left;
+            return line;
         }
 
         public boolean SplitAndAssign() {
-            if (!lines.isEmpty()) {
-                Consumer<String> update = (n) -> {
-                    var nref = getGlobal(n);
-                    try {
-                        // if this is first record "" gets parsed to 0 (0 + 1) = 1
-                        nref.setContents(parse(nref) + 1);
-                    } catch (AwkRuntimeError.ExpectedNumberError e) {
-                        nref.setContents("1");
-                    }
-                };
-                update.accept("NR");
-                update.accept("NFR");
-                String text = lines.remove(0);
-                variables.put("NF", new InterpreterDataType("" + lines.size()));
-                // assign each variable to $n
-                // assign lines and nf,fnr,nr
-                // is $0 for whole line if so start from 1
-                // also need to clear variables from previous line
-                record = new Record(text);
+            var line = advance();
+            if (line.isPresent()) {
+                // the record is reused, and the line only gets split into fields if they are
+                // needed
+                record.setRecord(line.get());
                 return true;
             }
             return false;
@@ -158,9 +500,59 @@ public class Interpreter {
     private ProgramNode program;
     private LineManager input;
 
+    // how the program gets run
+    public enum Engine {
+        // walk the ast directly
+        Interpret,
+        // compile the ast into a tree of closures first (see Compiler)
+        Compile,
+        // compile the ast into jvm bytecode (see BytecodeCompiler), anything that cant
+        // be is compiled into closures
+        Bytecode,
+        // compile the ast into instructions for a stack machine that keeps function
+        // calls on the heap (see StackMachine), so deep recursion doesnt overflow the
+        // java stack
+        Stack
+    }
+
+    private Engine engine = Engine.Interpret;
+    private Compiler compiler = null;
+    private Frame.Stack frames = new Frame.Stack();
+    private BytecodeCompiler.CompiledProgram bytecode = null;
+    private StackMachine machine = null;
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+        compiler = null;
+        bytecode = null;
+        machine = null;
+        if (engine == Engine.Stack) {
+            machine = new StackMachine(this, program);
+        } else if (engine != Engine.Interpret) {
+            compiler = new Compiler(this);
+            // compile the whole program up front
+            for (var blocks : List.of(program.getBeginBlocks(), program.getRestBlocks(), program.getEndBlocks())) {
+                blocks.forEach(compiler::block);
+            }
+        }
+        if (engine == Engine.Bytecode) {
+            bytecode = BytecodeCompiler.compile(program, this, compiler);
+        }
+    }
+
+    // public for testing purposes
+    public boolean isBytecodeCompiled(BlockNode block) {
+        return bytecode != null && bytecode.isCompiled(block);
+    }
+
     // public for testing purposes
     public void setInput(String input) {
-        this.input = new LineManager(new LinkedList<>(List.of(input.split("\n"))));
+        setInput(new StringReader(input));
+    }
+
+    // public for testing purposes
+    public void setInput(Reader input) {
+        this.input = new LineManager(new RecordReader(input, 8192, flushOutput), "");
     }
 
     // public for testing purposes
@@ -168,16 +560,78 @@ public class Interpreter {
         return record;
     }
 
+    // CONVFMT is used whenever any number gets turned into a string, which is done
+    // all over (the engines, builtins, the record) so its kept here instead of
+    // looking up the variable every time
+    String conversionFormat = "%.6g";
+
+    // when CONVFMT is assigned conversionFormat is updated
+    private class ConversionFormat extends InterpreterDataType {
+        public ConversionFormat() {
+            super("%.6g");
+        }
+
+        @Override
+        public void setContents(String contents) {
+            super.setContents(contents);
+            conversionFormat = contents;
+        }
+
+        @Override
+        public void setContents(double contents) {
+            super.setContents(contents);
+            conversionFormat = getContents();
+        }
+    }
+
+    private Output output = new Output(System.out);
+    // for readers, anything printed is written out before waiting on input so a
+    // program reading from a pipe or terminal shows its output as it goes
+    private Runnable flushOutput = () -> output.flush();
+
+    // public for testing purposes
+    public void setOutput(Output output) {
+        this.output = output;
+    }
+
+    Output getOutput() {
+        return output;
+    }
+
+    // how many threads the main rules can be run on, if the program doesnt depend on
+    // the order of the records (see ParallelAnalysis)
+    private int parallelism = 1;
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    // compiled regexes for ~, !~, match, sub and gsub when the regex isnt a literal
+    RegexCache regexes = new RegexCache(64);
+
     private HashMap<String, InterpreterDataType> variables = new HashMap<String, InterpreterDataType>() {
         {
             put("FS", new InterpreterDataType(" "));
             put("OFS", new InterpreterDataType(" "));
-            put("OFT", new InterpreterDataType("%.6g"));
+            put("OFMT", new InterpreterDataType("%.6g"));
+            put("CONVFMT", new ConversionFormat());
             put("ORS", new InterpreterDataType("\n"));
-            // we dont set nr/nf/nfr as getglobal will auto assign them if accesed
+            put("RS", new InterpreterDataType("\n"));
+            // we dont set nr/nf/fnr/filename as getglobal will auto assign them if accesed
         }
     };
 
+    // the splitter for the current FS, and where the fields of the last split record
+    // were (reused for every record)
+    private FieldSplitter splitter = new FieldSplitter(" ");
+    private FieldSplitter.Bounds fieldBounds = new FieldSplitter.Bounds();
+    // how many fields we need to split at most, when running a program this is the
+    // highest field the program uses (if we can tell)
+    private int fieldLimit = Integer.MAX_VALUE;
+    // split builtin gets its own splitter, so that using it with a different
+    // separator doesnt make us recompile FS for every record
+    private FieldSplitter splitBuiltinSplitter = splitter;
+
     // has to be after variables or else using new record freaks out about variables
     // being null1
     // your allowed to play with $0 $n in begin and end blocks via getline
@@ -188,6 +642,11 @@ public class Interpreter {
         return (variables.computeIfAbsent(index, u -> new InterpreterDataType()));
     }
 
+    // null if the global hasnt been made yet
+    InterpreterDataType findGlobal(String index) {
+        return variables.get(index);
+    }
+
     // awk allows for inventing varaibles so get or init
     // will attemptt to find the varaible or create a global
     // like in real awk the only thing local to function is the parameters, so get
@@ -200,6 +659,54 @@ public class Interpreter {
                 .orElseGet(() -> variables.computeIfAbsent(index, (u) -> defaultValue.get()));
     }
 
+    // the globals the program uses by slot (see VariableResolver), each slot is
+    // filled in from variables the first time its used, so a global is still only
+    // created when its first used and special variables (like NF) are the same
+    // object in both
+    private String[] globalNames = new String[0];
+    private InterpreterDataType[] globals = new InterpreterDataType[0];
+
+    InterpreterDataType getGlobal(int slot, Supplier<InterpreterDataType> defaultValue) {
+        var global = globals[slot];
+        if (global == null) {
+            global = variables.computeIfAbsent(globalNames[slot], u -> defaultValue.get());
+            globals[slot] = global;
+        }
+        return global;
+    }
+
+    String getGlobalName(int slot) {
+        return globalNames[slot];
+    }
+
+    // finds a variable for a variable reference using its slot if it has been
+    // resolved
+    private InterpreterDataType getOrInit(VariableReferenceNode variable, Frame frame,
+            Supplier<InterpreterDataType> defaultValue) {
+        if (variable.getSlot() == -1) {
+            var local = frame == null ? null : frame.get(variable.getName());
+            return local != null ? local : getOrInit(variable.getName(), Optional.empty(), defaultValue);
+        } else if (variable.isLocal()) {
+            // parameters always have a value as functions have to be called with all of
+            // them
+            return frame.get(variable.getSlot());
+        }
+        return getGlobal(variable.getSlot(), defaultValue);
+    }
+
+    InterpreterDataType getVariable(VariableReferenceNode variable, Frame vars) {
+        return getOrInit(variable, vars, InterpreterDataType::new);
+    }
+
+    InterpreterArrayDataType getArray(VariableReferenceNode variable, Frame vars) {
+        if (getOrInit(variable, vars, InterpreterArrayDataType::new) instanceof InterpreterArrayDataType array) {
+            return array;
+        } else {
+            var contents = getVariable(variable, vars);
+            throw new AwkRuntimeError.ExpectedArrayError(variable.getName(), contents.getContents(conversionFormat));
+        }
+    }
+
     // public for testing purposes
     public InterpreterDataType getVariable(String index, Optional<HashMap<String, InterpreterDataType>> vars) {
         return getOrInit(index, vars, () -> new InterpreterDataType());
@@ -219,31 +726,41 @@ public class Interpreter {
             return array;
         } else {
             var contents = getVariable(index, vars);
-            throw new AwkRuntimeError.ExpectedArrayError(index, contents.getContents());
+            throw new AwkRuntimeError.ExpectedArrayError(index, contents.getContents(conversionFormat));
         }
     }
 
     // real awk uses c's atof which allow for "" -> 0 instead of an error
-    private Float parse(InterpreterDataType value) {
-        var string = value.getContents().trim();
-        try {
-            if (string.isBlank()) {
-                return 0f;
-            }
-            return Float.parseFloat(string);
-        } catch (NumberFormatException e) {
-            throw new AwkRuntimeError.ExpectedNumberError(value, e);
+    double parse(InterpreterDataType value) {
+        // the value keeps the number around so we only ever parse a string once
+        if (value.isNumber()) {
+            return value.getNumber();
+        }
+        throw new AwkRuntimeError.ExpectedNumberError(value);
+    }
+
+    // next, nextfile and exit are thrown to get out of whatever is running, they
+    // dont need a stack trace (filling one in walks the whole stack every time) and
+    // next/nextfile carry nothing so the same one is thrown each time
+    private static class Signal extends RuntimeException {
+        public Signal() {
+            super(null, null, false, false);
         }
     }
 
     // public for testing next
     // used for singalling a next staements has appeared - wont get handled till
     // interpeter 4
-    public class Next extends RuntimeException {
+    public class Next extends Signal {
+
+    }
+
+    // public for testing nextfile
+    public class NextFile extends Signal {
 
     }
 
-    private static class Exit extends RuntimeException {
+    private static class Exit extends Signal {
         int status;
 
         public Exit(int status) {
@@ -251,6 +768,9 @@ public class Interpreter {
         }
     }
 
+    private final Next next = new Next();
+    private final NextFile nextFile = new NextFile();
+
     // docs https://pubs.opengroup.org/onlinepubs/7908799/xcu/awk.html
     // slightly more formatted
     // https://manpages.ubuntu.com/manpages/focal/en/man1/awk.1posix.html
@@ -267,18 +787,24 @@ public class Interpreter {
             // for the others the getOptional on IADT checks that for us
 
             // prints list of strings to stdout + ORS
+            // each string (and separator) is written straight to the output buffer
             put("print", new BuiltInFunctionDefinitionNode("print", (vars) -> {
-                InterpreterArrayDataType strings = getArray("strings", vars);
+                var strings = getArray("strings", vars).getHashMap();
                 if (strings.size() > 0) {
-                    System.out.print(
-                            strings.getItemsStream().map(InterpreterDataType::getContents)
-                                    .collect(Collectors.joining(getGlobal("OFS").getContents()))
-                                    + getGlobal("ORS")
-                                            .getContents());
+                    var separator = getGlobal("OFS").getContents(conversionFormat);
+                    var format = getGlobal("OFMT").getContents(conversionFormat);
+                    for (int i = 0; i < strings.size(); i++) {
+                        if (i > 0) {
+                            output.write(separator);
+                        }
+                        strings.get(String.valueOf(i)).print(output, format);
+                    }
                 } else {
                     // if no strings passed print $0
-                    System.out.print(record.Get(0).getContents() + getGlobal("ORS").getContents());
+                    output.write(record.Get(0).getCharSequence(conversionFormat));
                 }
+                output.write(getGlobal("ORS").getContents(conversionFormat));
+                output.endRecord();
                 return "";
             }, new LinkedList<>() {
                 {
@@ -288,10 +814,12 @@ public class Interpreter {
 
             // prints list of strings formatted by format to stdout
             put("printf", new BuiltInFunctionDefinitionNode("printf", (vars) -> {
-                String format = getVariable("format", vars).getContents();
+                String format = getVariable("format", vars).getContents(conversionFormat);
                 InterpreterArrayDataType strings = getArray("strings", vars);
                 // how to use print to format elements of stream of strings by format
-                System.out.printf(format, strings.getItemsStream().map(InterpreterDataType::getContents).toArray());
+                output.write(format.formatted(
+                        strings.getItemsStream().map(value -> value.getContents(conversionFormat)).toArray()));
+                output.endRecord();
                 return "";
             }, new LinkedList<>() {
                 {
@@ -300,11 +828,24 @@ public class Interpreter {
                 }
             }, true));
 
+            // writes out anything print or printf havent written yet
+            // we only have one output (stdout) so it doesnt matter what (if anything) is
+            // passed in
+            put("fflush", new BuiltInFunctionDefinitionNode("fflush", (vars) -> {
+                output.flush();
+                return "0";
+            }, new LinkedList<>() {
+                {
+                    add("output");
+                }
+            }, true));
+
             // returns list of strings formatted by format
             put("sprintf", new BuiltInFunctionDefinitionNode("sprintf", (vars) -> {
-                String format = getVariable("format", vars).getContents();
+                String format = getVariable("format", vars).getContents(conversionFormat);
                 InterpreterArrayDataType strings = getArray("strings", vars);
-                return format.formatted(strings.getItemsStream().map(InterpreterDataType::getContents).toArray());
+                return format.formatted(
+                        strings.getItemsStream().map(value -> value.getContents(conversionFormat)).toArray());
             }, new LinkedList<>() {
                 {
                     add("format");
@@ -328,22 +869,28 @@ public class Interpreter {
 
             // we through next aand will handl in later assignments
             put("next", new BuiltInFunctionDefinitionNode("next", (vars) -> {
-                throw new Next();
+                throw next;
+            }, new LinkedList<>(), false));
+
+            // like next, but also makes the rest of the current file get skipped
+            put("nextfile", new BuiltInFunctionDefinitionNode("nextfile", (vars) -> {
+                throw nextFile;
             }, new LinkedList<>(), false));
 
             // function for [g?]sub
             // mutates passed in string or $0 (b/c when buitins are called they do not
             // clone)
-            BiFunction<String, TriFunction<String, String, String, String>, BuiltInFunctionDefinitionNode> sub = (name,
+            BiFunction<String, BiFunction<Matcher, String, String>, BuiltInFunctionDefinitionNode> sub = (name,
                     replacer) -> new BuiltInFunctionDefinitionNode(name, (vars) -> {
-                        String pattern = getVariable("pattern", vars).getContents();
+                        var pattern = regexes.get(getVariable("pattern", vars).getContents(conversionFormat));
                         String replacement = (getVariable("replacement", vars)
-                                .getContents());
+                                .getContents(conversionFormat));
                         InterpreterDataType target = (getArray("target", vars))
                                 .getOptional(name)
                                 // if no target passed -> $0
                                 .orElseGet(() -> record.Get(0));
-                        target.setContents(replacer.apply(target.getContents(), pattern, replacement));
+                        target.setContents(
+                                replacer.apply(pattern.matcher(target.getContents(conversionFormat)), replacement));
                         return "";
                     }, new LinkedList<>() {
                         {
@@ -352,17 +899,18 @@ public class Interpreter {
                             add("target");
                         }
                     }, true);
-            put("gsub", sub.apply("gsub", String::replaceAll));
+            put("gsub", sub.apply("gsub", Matcher::replaceAll));
             put("match", new BuiltInFunctionDefinitionNode("match", (vars) -> {
-                String haystack = getVariable("haystack", vars).getContents();
-                String needle = getVariable("needle", vars).getContents();
-                var pattern = Pattern.compile(needle);
+                String haystack = getVariable("haystack", vars).getContents(conversionFormat);
+                String needle = getVariable("needle", vars).getContents(conversionFormat);
+                var pattern = regexes.get(needle);
                 var matcher = pattern.matcher(haystack);
                 boolean matches = matcher.find();
                 String index = String.valueOf(matches ? matcher.start() + 1 : 0);
                 String length = String.valueOf((matches) ? matcher.end() - matcher.start() : -1);
-                variables.put("RSTART", new InterpreterDataType(index));
-                variables.put("RLENGTH", new InterpreterDataType(length));
+                // globals are looked up by slot so we cant replace them
+                getGlobal("RSTART").setContents(index);
+                getGlobal("RLENGTH").setContents(length);
                 return index;
             }, new LinkedList<>() {
                 {
@@ -370,11 +918,11 @@ public class Interpreter {
                     add("needle");
                 }
             }, false));
-            put("sub", sub.apply("sub", String::replaceFirst));
+            put("sub", sub.apply("sub", Matcher::replaceFirst));
             // returns 1 based index of needle in haystack if present otherwise 0
             put("index", new BuiltInFunctionDefinitionNode("index", (vars) -> {
-                String haystack = getVariable("haystack", vars).getContents();
-                String needle = getVariable("needle", vars).getContents();
+                String haystack = getVariable("haystack", vars).getContents(conversionFormat);
+                String needle = getVariable("needle", vars).getContents(conversionFormat);
                 int index = haystack.indexOf(needle);
                 return String.valueOf(index == -1 ? 0 : index + 1);
             }, new LinkedList<>() {
@@ -387,7 +935,7 @@ public class Interpreter {
             put("length", new BuiltInFunctionDefinitionNode("length", (vars) -> {
                 String string = (getArray("string", vars)).getOptional("length")
                         .orElseGet(() -> record.Get(0))
-                        .getContents();
+                        .getContents(conversionFormat);
                 return String.valueOf(string.length());
             }, new LinkedList<>() {
                 {
@@ -396,14 +944,15 @@ public class Interpreter {
             }, true));
             // varidac over seperator (defaults to FS)
             put("split", new BuiltInFunctionDefinitionNode("split", (vars) -> {
-                String string = getVariable("string", vars).getContents();
+                String string = getVariable("string", vars).getContents(conversionFormat);
                 InterpreterArrayDataType array = getArray("array", vars);
                 array.clear();
                 String sep = (getArray("sep", vars))
                         // if no sep passed -> FS
                         .getOptional("split").orElse(getGlobal("FS"))
-                        .getContents();
-                var strings = string.split(sep);
+                        .getContents(conversionFormat);
+                splitBuiltinSplitter = FieldSplitter.forSeparator(splitBuiltinSplitter, sep);
+                var strings = splitBuiltinSplitter.split(string);
                 int index = 0;
                 for (String s : strings) {
                     // indicies start mostly at one in awk
@@ -418,12 +967,12 @@ public class Interpreter {
                 }
             }, true));
             put("substr", new BuiltInFunctionDefinitionNode("substr", (vars) -> {
-                String string = getVariable("string", vars).getContents();
+                String string = getVariable("string", vars).getContents(conversionFormat);
                 // we do start -1 b\c according to spec the start is 1-based index
-                int start = parse(getVariable("start", vars)).intValue() - 1;
+                int start = (int) parse(getVariable("start", vars)) - 1;
                 return (getArray("length", vars))
                         .getOptional("substr")
-                        .<String>map(n -> string.substring(start, start + parse(n).intValue()))
+                        .<String>map(n -> string.substring(start, start + (int) parse(n)))
                         // if no length -> just go to end of string
                         .orElse(string.substring(start));
 
@@ -436,7 +985,7 @@ public class Interpreter {
             }, true));
             BiFunction<String, Function<String, String>, BuiltInFunctionDefinitionNode> strUpdate = (name,
                     mapper) -> new BuiltInFunctionDefinitionNode(name, (vars) -> {
-                        String string = getVariable("string", vars).getContents();
+                        String string = getVariable("string", vars).getContents(conversionFormat);
                         return mapper.apply(string);
                     }, new LinkedList<>() {
                         {
@@ -446,9 +995,9 @@ public class Interpreter {
             put("tolower", strUpdate.apply("tolower", String::toLowerCase));
             put("toupper", strUpdate.apply("toupper", String::toUpperCase));
             put("exit", new BuiltInFunctionDefinitionNode("exit", (vars) -> {
-                String status = getVariable("status", vars).getContents();
+                String status = getVariable("status", vars).getContents(conversionFormat);
                 // exit will make the program run the end blocks and then exit
-                throw new Exit(parse(new InterpreterDataType(status)).intValue());
+                throw new Exit((int) parse(new InterpreterDataType(status)));
             }, new LinkedList<>() {
                 {
                     add("status");
@@ -463,25 +1012,78 @@ public class Interpreter {
     }
 
     public Interpreter(ProgramNode program, Optional<String> path) throws IOException {
-        input = new LineManager(
-                path.isPresent() ? Files.readAllLines(Paths.get(path.get())) : new LinkedList<String>());
+        this(program, path.<List<String>>map(List::of).orElse(List.of()));
+        // unlike with a list of paths no path means no input (not stdin), so the unit
+        // tests never end up waiting on stdin
+        if (path.isEmpty()) {
+            setInput("");
+        }
+    }
+
+    // the files are read one after another, as if they were one input
+    // if there are no files (or the file is -) stdin is read
+    public Interpreter(ProgramNode program, List<String> paths) throws IOException {
+        input = new LineManager(paths.isEmpty() ? List.of("-") : paths);
         this.program = program;
+        globalNames = VariableResolver.resolve(program).toArray(String[]::new);
+        globals = new InterpreterDataType[globalNames.length];
         functions.putAll(
                 program.getFunctions().stream().collect(Collectors.toMap(FunctionNode::getName, function -> function)));
 
     }
 
-    // maps params to args
-    // the mapper function is used to clone idts so they cannot be modified from non
-    // builtin fucntions
-    private HashMap<String, InterpreterDataType> proccesArgs(LinkedList<String> params, LinkedList<Node> args,
-            Boolean vardiac, String functionName, HashMap<String, InterpreterDataType> locals,
-            Function<InterpreterDataType, InterpreterDataType> mapper) {
-        if (vardiac ? args.size() < params.size() - 1 : args.size() != params.size()) {
-            throw new AwkRuntimeError.AwkArittyError(functionName, params.size(), args.size(),
+    // a copy of parent for running the main rules on another thread (see
+    // ParallelRunner), every global is copied so nothing is shared between them
+    // the copy runs program (parents program with its accumulators replaced, see
+    // Accumulators, which recorder records) and has no input, records are given to
+    // it by runRecord
+    Interpreter(Interpreter parent, ProgramNode program, Accumulators.Recorder recorder) {
+        this.program = program;
+        setInput("");
+        globalNames = parent.globalNames;
+        globals = new InterpreterDataType[globalNames.length];
+        functions.putAll(
+                program.getFunctions().stream().collect(Collectors.toMap(FunctionNode::getName, function -> function)));
+        // before compiling, calls are looked up when there compiled
+        functions.put(Accumulators.BUILTIN, recorder.builtin(this));
+        fieldLimit = parent.fieldLimit;
+        parent.variables.forEach((name, value) -> {
+            switch (value) {
+                case InterpreterArrayDataType array -> {
+                    var contents = new HashMap<String, InterpreterDataType>();
+                    array.getHashMap().forEach((key, element) -> contents.put(key, element.Clone()));
+                    variables.put(name, new InterpreterArrayDataType(contents));
+                }
+                // these are tied to this interpreter
+                case ConversionFormat format -> variables.get(name).setContents(format.getContents());
+                case Record.NumberOfFields numberOfFields -> {
+                }
+                default -> variables.put(name, value.Clone());
+            }
+        });
+        setEngine(parent.engine);
+    }
+
+    // checks that a function was called with the right number of arguments
+    void checkArity(List<String> params, int args, Boolean vardiac, String functionName) {
+        if (vardiac ? args < params.size() - 1 : args != params.size()) {
+            throw new AwkRuntimeError.AwkArittyError(functionName, params.size(), args,
                     vardiac);
         }
-        var evaledArgs = args.stream().<InterpreterDataType>map(a -> GetIDT(a, locals)).map(mapper).toList();
+    }
+
+    // maps params to args (for builtins, user functions get a Frame)
+    // the args are not cloned so builtins like [g?]sub can modify them
+    private HashMap<String, InterpreterDataType> proccesArgs(LinkedList<String> params, LinkedList<Node> args,
+            Boolean vardiac, String functionName, Frame locals) {
+        checkArity(params, args.size(), vardiac, functionName);
+        var evaledArgs = args.stream().<InterpreterDataType>map(a -> GetIDT(a, locals)).toList();
+        return bindArgs(params, evaledArgs, vardiac);
+    }
+
+    // maps params to args that have already been evaluated
+    HashMap<String, InterpreterDataType> bindArgs(List<String> params, List<InterpreterDataType> evaledArgs,
+            Boolean vardiac) {
         // go through all parameter besides for the last (special cases for vardiacs)
         if (vardiac) {
             // we can do limit to size -1 b/c varidiac garuntess there is at least one param
@@ -489,7 +1091,7 @@ public class Interpreter {
             var map = Stream.iterate(0, n -> n + 1).limit(params.size() - 1)
                     .collect(Collectors.toMap(i -> params.get(i), i -> evaledArgs.get(i)));
             map.put(params.getLast(), new InterpreterArrayDataType(new HashMap<>(
-                    Stream.iterate(params.size() - 1, i -> i < args.size(), n -> n + 1)
+                    Stream.iterate(params.size() - 1, i -> i < evaledArgs.size(), n -> n + 1)
                             .collect(Collectors.toMap(i -> "" + (i - (params.size() - 1)),
                                     i -> evaledArgs.get(i))))));
             return new HashMap<>(map);
@@ -498,28 +1100,60 @@ public class Interpreter {
                 .collect(Collectors.toMap(i -> params.get(i), i -> evaledArgs.get(i))));
     }
 
-    private String RunFunctionCall(FunctionCallNode function, HashMap<String, InterpreterDataType> locals) {
+    private InterpreterDataType RunFunctionCall(FunctionCallNode function, Frame locals) {
         var functionDefinition = Optional.ofNullable(functions.get(function.getFunctionName()))
                 .orElseThrow(() -> new AwkRuntimeError.FunctionNotFoundError(function.getFunctionName()));
 
         if (functionDefinition instanceof BuiltInFunctionDefinitionNode buitlin) {
             var args = proccesArgs(buitlin.getParameters(), function.getParameters(), buitlin.getVaridiac(),
-                    // mapper here is identity b/c for builtins we do not clone so [g?]sub works
-                    function.getFunctionName(), locals, i -> i);
-            return buitlin.getExecute().apply(args);
+                    function.getFunctionName(), locals);
+            return new InterpreterDataType(buitlin.getExecute().apply(args));
         } else {
-            var args = proccesArgs(functionDefinition.getParameters(), function.getParameters(), false,
-                    function.getFunctionName(), locals, InterpreterDataType::Clone);
-            var retValue = InterpretListOfStatements(new BlockNode(functionDefinition.getStatements()), args);
-            return switch (retValue.getReturnKind()) {
-                case Normal, Return -> retValue.getReturnValue().orElse("");
-                default -> throw new AwkRuntimeError.ReturnInOuterBlockError(retValue);
-            };
+            var params = functionDefinition.getParameters();
+            checkArity(params, function.getParameters().size(), false, function.getFunctionName());
+            // the arguments go straight into the frame for the call
+            var frame = frames.push(params);
+            try {
+                int slot = 0;
+                for (var arg : function.getParameters()) {
+                    var value = GetIDT(arg, locals);
+                    frame.set(slot++, isTemporary(arg) ? value : value.Clone());
+                }
+                var retValue = InterpretListOfStatements(functionDefinition.getStatements(), frame);
+                return switch (retValue.getReturnKind()) {
+                    case Normal, Return -> retValue.getReturnValue().orElseGet(InterpreterDataType::new);
+                    default -> throw new AwkRuntimeError.ReturnInOuterBlockError(retValue);
+                };
+            } finally {
+                frames.pop();
+            }
         }
     }
 
+    // whether evaluating node always makes a new value, if so it can be passed to a
+    // function without cloning it as nothing else has it
+    static boolean isTemporary(Node node) {
+        return switch (node) {
+            case ConstantNode c -> true;
+            case PatternNode p -> true;
+            case FunctionCallNode f -> true;
+            // everything besides for $ makes a new value
+            case OperationNode op -> op.getOperation() != OperationNode.Operation.DOLLAR;
+            default -> false;
+        };
+    }
+
     // package visibile for unit tests
     InterpreterDataType GetIDT(Node value, HashMap<String, InterpreterDataType> locals) {
+        // the compiled engine never calls this, so this is only when the unit tests
+        // evaluate a node by itself
+        if (compiler != null) {
+            return compiler.expression(value).evaluate(Frame.of(locals));
+        }
+        return GetIDT(value, Frame.of(locals));
+    }
+
+    private InterpreterDataType GetIDT(Node value, Frame locals) {
         switch (value) {
             case AssignmentNode a -> {
                 var newValue = GetIDT(a.getExpression(), locals);
@@ -527,21 +1161,21 @@ public class Interpreter {
                 // we can really only assign to scalar
                 // we inteninall setcontents and getcontents so assignment doesnt modify
                 // original variable
-                GetIDT(a.getTarget(), locals).setContents(newValue.getContents());
+                GetIDT(a.getTarget(), locals).setContents(newValue);
                 return newValue;
             }
             case ConstantNode c -> {
-                return new InterpreterDataType(c.getValue());
+                return c.newValue();
             }
             case FunctionCallNode f -> {
-                return new InterpreterDataType(RunFunctionCall(f, locals));
+                return RunFunctionCall(f, locals);
             }
             case PatternNode p -> {
                 // patterns are valid anywhere in awk
                 return new InterpreterDataType(p.getPattern());
             }
             case TernaryOperationNode t -> {
-                return truthyValue(GetIDT(t.getCond(), locals).getContents()) == "1" ? GetIDT(t.getThen(), locals)
+                return truthyValue(GetIDT(t.getCond(), locals)) == "1" ? GetIDT(t.getThen(), locals)
                         : GetIDT(t.getAlt(), locals);
 
             }
@@ -549,9 +1183,9 @@ public class Interpreter {
                 // we dont error on arrays b/c maybe this method is being used as part of a
                 // function call
                 return v.getIndex().<InterpreterDataType>map(i -> {
-                    var index = GetIDT(i, locals).getContents();
-                    return getArray(v.getName(), locals).get(index);
-                }).orElseGet(() -> getVariable(v.getName(), locals));
+                    var index = GetIDT(i, locals).getContents(conversionFormat);
+                    return getArray(v, locals).get(index);
+                }).orElseGet(() -> getVariable(v, locals));
             }
             case OperationNode op -> {
                 return GetIDT(op, locals);
@@ -575,24 +1209,24 @@ public class Interpreter {
 
     }
 
-    private InterpreterDataType GetIDT(OperationNode op, HashMap<String, InterpreterDataType> locals) {
+    private InterpreterDataType GetIDT(OperationNode op, Frame locals) {
         // yield is used to return from a block
         // https://stackoverflow.com/questions/56806905/return-outside-of-enclosing-switch-expression
 
         // used for doing math takes 2 nodes interprets them and then applies the math
         // to them
-        TriFunction<Node, Node, BiFunction<Float, Float, Float>, InterpreterDataType> mathOp = (a, b,
-                math) -> new InterpreterDataType(math.apply(
+        TriFunction<Node, Node, DoubleBinaryOperator, InterpreterDataType> mathOp = (a, b,
+                math) -> new InterpreterDataType(math.applyAsDouble(
                         parse(GetIDT(a, locals)), parse(GetIDT(b, locals))));
 
         // used for doing increment/decrement takes a node and a function to apply to it
         // we also need to know if its pre or post increment/decrement so we can return
         // old or new value
-        TriFunction<Node, Boolean, Function<Float, Float>, InterpreterDataType> opAssign = (v, pre, math) -> {
+        TriFunction<Node, Boolean, DoubleUnaryOperator, InterpreterDataType> opAssign = (v, pre, math) -> {
             checkAssignAble(v);
             var variable = GetIDT(v, locals);
             var oldValue = parse(variable);
-            var newValue = math.apply(oldValue);
+            var newValue = math.applyAsDouble(oldValue);
             variable.setContents(newValue);
             return new InterpreterDataType((pre ? oldValue : newValue));
         };
@@ -600,54 +1234,49 @@ public class Interpreter {
         // and extracts the pattern from the node and then matches the string against it
         // (we use getidt to extract pattern b/c pattern can be anything ever 5) so 5 ~
         // 4 is valid
-        BiFunction<String, Node, String> match = (string, pattern) -> {
-            return Pattern.matches(GetIDT(pattern, locals).getContents(), string) ? "1" : "0";
+        BiFunction<CharSequence, Node, String> match = (string, pattern) -> {
+            // regex literals are already compiled, anything else goes through the cache
+            var regex = pattern instanceof PatternNode p && p.getCompiled().isPresent() ? p.getCompiled().get()
+                    : regexes.get(GetIDT(pattern, locals).getContents(conversionFormat));
+            return regex.matcher(string).matches() ? "1" : "0";
 
         };
         // comparisons in awk first try to convert to numbers and then compare otherwise
         // they compare as strings
         TriFunction<Node, Node, Function<Integer, Boolean>, InterpreterDataType> compare = (
-                x, y, comparator) -> {
-            var new_x = GetIDT(x, locals);
-            var new_y = GetIDT(y, locals);
-            try {
-                return new InterpreterDataType(comparator.apply(parse(new_x).compareTo(parse(new_y))) ? "1" : "0");
-            } catch (AwkRuntimeError.ExpectedNumberError e) {
-                return new InterpreterDataType(
-                        comparator.apply(new_x.getContents().compareTo(new_y.getContents())) ? "1" : "0");
-            }
-
-        };
+                x, y, comparator) -> new InterpreterDataType(
+                        comparator.apply(compare(GetIDT(x, locals), GetIDT(y, locals))) ? "1" : "0");
         return switch (op.getOperation()) {
             case DOLLAR -> {
                 var index = parse(GetIDT(op.getLeft(), locals));
                 // negative index is not allowed (checked here as opposed to in Record::Get)
                 if (index < 0) {
-                    throw new AwkRuntimeError.NegativeFieldIndexError(op, index.intValue());
+                    throw new AwkRuntimeError.NegativeFieldIndexError(op, (int) index);
                 }
-                yield record.Get(index.intValue());
+                yield record.Get((int) index);
             }
             case ADD -> mathOp.apply(op.getLeft(), op.getRight().get(), (x, y) -> x + y);
-            case AND -> new InterpreterDataType(truthyValue(GetIDT(op.getLeft(), locals).getContents()) == "1"
-                    ? truthyValue(GetIDT(op.getRight().get(), locals).getContents())
+            case AND -> new InterpreterDataType(truthyValue(GetIDT(op.getLeft(), locals)) == "1"
+                    ? truthyValue(GetIDT(op.getRight().get(), locals))
                     : "0");
             case CONCATENATION -> new InterpreterDataType(
-                    GetIDT(op.getLeft(), locals).getContents() + GetIDT(op.getRight().get(), locals));
+                    GetIDT(op.getLeft(), locals).getContents(conversionFormat)
+                            + GetIDT(op.getRight().get(), locals).getContents(conversionFormat));
             case DIVIDE -> mathOp.apply(op.getLeft(), op.getRight().get(), (x, y) -> x / y);
             case EQ -> compare.apply(op.getLeft(), op.getRight().get(), c -> c == 0);
-            case EXPONENT -> mathOp.apply(op.getLeft(), op.getRight().get(), (x, y) -> (float) Math.pow(x, y));
+            case EXPONENT -> mathOp.apply(op.getLeft(), op.getRight().get(), Math::pow);
             case GE -> compare.apply(op.getLeft(), op.getRight().get(), c -> c >= 0);
             case GT -> compare.apply(op.getLeft(), op.getRight().get(), c -> c > 0);
 
             case IN -> {
-                var index = GetIDT(op.getLeft(), locals).getContents();
+                var index = GetIDT(op.getLeft(), locals).getContents(conversionFormat);
                 if (op.getRight().get() instanceof VariableReferenceNode v) {
                     // through error if the index is present since we do not support
                     // mutlidimensional arrays
                     if (v.getIndex().isPresent()) {
                         throw new AwkRuntimeError.ExpectedArrayError(index, "");
                     }
-                    var array = getArray(v.getName(), locals);
+                    var array = getArray(v, locals);
                     yield new InterpreterDataType(array.contains(index) ? "1" : "0");
                 } else {
                     throw new AwkRuntimeError.ExpectedArrayError(index, "");
@@ -655,21 +1284,22 @@ public class Interpreter {
             }
             case LE -> compare.apply(op.getLeft(), op.getRight().get(), c -> c <= 0);
             case LT -> compare.apply(op.getLeft(), op.getRight().get(), c -> c < 0);
-            case MATCH -> new InterpreterDataType(match.apply(GetIDT(op.getLeft(), locals).getContents(),
-                    op.getRight().get()));
+            case MATCH -> new InterpreterDataType(
+                    match.apply(GetIDT(op.getLeft(), locals).getCharSequence(conversionFormat), op.getRight().get()));
             case MODULO -> mathOp.apply(op.getLeft(), op.getRight().get(), (x, y) -> x % y);
             case MULTIPLY -> mathOp.apply(op.getLeft(), op.getRight().get(), (x, y) -> x * y);
             case NE -> compare.apply(op.getLeft(), op.getRight().get(), c -> c != 0);
             case NOT ->
-                new InterpreterDataType(truthyValue(GetIDT(op.getLeft(), locals).getContents()) == "1"
+                new InterpreterDataType(truthyValue(GetIDT(op.getLeft(), locals)) == "1"
                         ? "0"
                         : "1");
-            case NOTMATCH -> new InterpreterDataType(match.apply(GetIDT(op.getLeft(), locals).getContents(),
-                    op.getRight().get()) == "1" ? "0" : "1");
+            case NOTMATCH -> new InterpreterDataType(
+                    match.apply(GetIDT(op.getLeft(), locals).getCharSequence(conversionFormat),
+                            op.getRight().get()) == "1" ? "0" : "1");
             case OR ->
-                new InterpreterDataType(truthyValue(GetIDT(op.getLeft(), locals).getContents()) == "1"
+                new InterpreterDataType(truthyValue(GetIDT(op.getLeft(), locals)) == "1"
                         ? "1"
-                        : truthyValue(GetIDT(op.getRight().get(), locals).getContents()));
+                        : truthyValue(GetIDT(op.getRight().get(), locals)));
             case POSTDEC -> opAssign.apply(op.getLeft(), false, (x) -> x - 1);
             case POSTINC -> opAssign.apply(op.getLeft(), false, (x) -> x + 1);
             case PREDEC -> opAssign.apply(op.getLeft(), true, (x) -> x - 1);
@@ -683,23 +1313,34 @@ public class Interpreter {
         };
     }
 
+    // comparisons in awk first try to convert to numbers and then compare otherwise
+    // they compare as strings (numbers made into strings with this interpreters
+    // CONVFMT)
+    int compare(InterpreterDataType x, InterpreterDataType y) {
+        if (x.isNumber() && y.isNumber()) {
+            return Double.compare(x.getNumber(), y.getNumber());
+        }
+        return CharSequence.compare(x.getCharSequence(conversionFormat), y.getCharSequence(conversionFormat));
+    }
+
     // used for checking if a string is truthy (by awk standards)
     // 0 or non number is false any other number is true
-    private String truthyValue(String value) {
-        try {
-            return (Float.parseFloat(value) == 0.0) ? "0" : "1";
-        } catch (NumberFormatException e) {
-            return "0";
-        }
+    private String truthyValue(InterpreterDataType value) {
+        return isTruthy(value) ? "1" : "0";
     }
 
-    private ReturnType ProcessStatement(HashMap<String, InterpreterDataType> locals, StatementNode stmt) {
+    static boolean isTruthy(InterpreterDataType value) {
+        return value.isNumber() && value.getNumber() != 0;
+    }
+
+    private ReturnType ProcessStatement(Frame locals, StatementNode stmt) {
         return switch (stmt) {
-            case BreakNode br -> new ReturnType(ReturnType.ReturnKind.Break);
-            case ContinueNode ct -> new ReturnType(ReturnType.ReturnKind.Continue);
+            case BreakNode br -> ReturnType.BREAK;
+            case ContinueNode ct -> ReturnType.CONTINUE;
             case ReturnNode rt -> rt.getReturnValue().map(
-                    ret -> new ReturnType(GetIDT(ret, locals).getContents(), ReturnType.ReturnKind.Return))
-                    .orElse(new ReturnType(ReturnType.ReturnKind.Return));
+                    ret -> new ReturnType(InterpreterDataType.scalarCopy(GetIDT(ret, locals)),
+                            ReturnType.ReturnKind.Return))
+                    .orElse(ReturnType.RETURN);
 
             case DoWhileNode dw -> {
                 do {
@@ -709,12 +1350,12 @@ public class Interpreter {
                     } else if (returnType.getReturnKind() == ReturnType.ReturnKind.Break) {
                         break;
                     }
-                } while (truthyValue(GetIDT(dw.getCondition(), locals).getContents()) == "1");
-                yield new ReturnType(ReturnType.ReturnKind.Normal);
+                } while (truthyValue(GetIDT(dw.getCondition(), locals)) == "1");
+                yield ReturnType.NORMAL;
             }
 
             case WhileNode wl -> {
-                while (truthyValue(GetIDT(wl.getCondition(), locals).getContents()) == "1") {
+                while (truthyValue(GetIDT(wl.getCondition(), locals)) == "1") {
                     var returnType = InterpretListOfStatements(wl.getBlock(), locals);
                     if (returnType.getReturnKind() == ReturnType.ReturnKind.Return) {
                         yield returnType;
@@ -722,10 +1363,10 @@ public class Interpreter {
                         break;
                     }
                 }
-                yield new ReturnType(ReturnType.ReturnKind.Normal);
+                yield ReturnType.NORMAL;
             }
             case IfNode ifs -> {
-                if (truthyValue(GetIDT(ifs.getCondition(), locals).getContents()) == "1") {
+                if (truthyValue(GetIDT(ifs.getCondition(), locals)) == "1") {
                     // if return type is break/cotinue/return we need to return it
                     var returnType = InterpretListOfStatements(ifs.getThenBlock(), locals);
                     yield returnType;
@@ -736,7 +1377,7 @@ public class Interpreter {
                     } else {
                         return InterpretListOfStatements((BlockNode) block, locals);
                     }
-                }).orElse(new ReturnType(ReturnType.ReturnKind.Normal));
+                }).orElse(ReturnType.NORMAL);
 
             }
             case ForNode fr -> {
@@ -757,7 +1398,7 @@ public class Interpreter {
                 // do-while while) in them (even the parser catches this) and at that point
                 // getidt suffices
                 for (fr.getInit().ifPresent(init -> GetIDT(init, locals)); fr.getCondition()
-                        .map(cond -> truthyValue(GetIDT(cond, locals).getContents()) == "1")
+                        .map(cond -> truthyValue(GetIDT(cond, locals)) == "1")
                         .orElse(true); fr.getIncrement().ifPresent(inc -> GetIDT(inc, locals))) {
                     var returnType = InterpretListOfStatements(fr.getBlock(), locals);
                     if (returnType.getReturnKind() == ReturnType.ReturnKind.Return) {
@@ -766,13 +1407,13 @@ public class Interpreter {
                         break;
                     }
                 }
-                yield new ReturnType(ReturnType.ReturnKind.Normal);
+                yield ReturnType.NORMAL;
             }
             case ForEachNode fe -> {
                 if (fe.getIterable() instanceof VariableReferenceNode v) {
                     // TODO: through exception for mutlidimensional arrays (parser shuld only allow
                     // name not full lvalue?)
-                    InterpreterArrayDataType iterable = getArray(v.getName(), locals);
+                    InterpreterArrayDataType iterable = getArray(v, locals);
                     for (var index : iterable.getKeysList()) {
                         // indices are global and local in awk even if declared earlier in a local scope
                         // so global == local == index
@@ -791,19 +1432,20 @@ public class Interpreter {
                 } else {
                     throw new AwkRuntimeError.ExpectedIterableError(fe.getIterable().toString());
                 }
-                yield new ReturnType(ReturnType.ReturnKind.Normal);
+                yield ReturnType.NORMAL;
             }
 
             case DeleteNode dl -> {
                 if (dl.getArray() instanceof VariableReferenceNode v) {
-                    InterpreterArrayDataType iterable = getArray(v.getName(), locals);
-                    v.getIndex().ifPresentOrElse(i -> iterable.get(GetIDT(i, locals).getContents()).setContents(""),
+                    InterpreterArrayDataType iterable = getArray(v, locals);
+                    v.getIndex().ifPresentOrElse(
+                            i -> iterable.get(GetIDT(i, locals).getContents(conversionFormat)).setContents(""),
                             () -> iterable.clear());
 
                 } else {
                     throw new AwkRuntimeError.ExpectedDeleteArrayError(dl.getArray().toString());
                 }
-                yield new ReturnType(ReturnType.ReturnKind.Normal);
+                yield ReturnType.NORMAL;
             }
             // function calls and assignments can be done via getidt (but assingments need
             // to return the value of the right side??? this is not a expression oriented
@@ -842,13 +1484,13 @@ public class Interpreter {
             // otherwise its constant or other getidt can handle it
             default -> {
                 GetIDT(stmt, locals);
-                yield new ReturnType(ReturnType.ReturnKind.Normal);
+                yield ReturnType.NORMAL;
             }
 
         };
     }
 
-    private ReturnType loop(Supplier<Boolean> hasNext, BlockNode block, HashMap<String, InterpreterDataType> locals) {
+    private ReturnType loop(Supplier<Boolean> hasNext, BlockNode block, Frame locals) {
         while (hasNext.get()) {
             var returnType = InterpretListOfStatements(block, locals);
             if (returnType.getReturnKind() == ReturnType.ReturnKind.Return) {
@@ -857,18 +1499,21 @@ public class Interpreter {
                 break;
             }
         }
-        return new ReturnType(ReturnType.ReturnKind.Normal);
+        return ReturnType.NORMAL;
+    }
+
+    private ReturnType InterpretListOfStatements(BlockNode block, Frame locals) {
+        return InterpretListOfStatements(block.getStatements(), locals);
     }
 
-    private ReturnType InterpretListOfStatements(BlockNode block,
-            HashMap<String, InterpreterDataType> locals) {
-        for (var stmt : block.getStatements()) {
+    private ReturnType InterpretListOfStatements(List<StatementNode> statements, Frame locals) {
+        for (var stmt : statements) {
             var maybeReturn = ProcessStatement(locals, stmt);
             if (maybeReturn.getReturnKind() != ReturnType.ReturnKind.Normal) {
                 return (maybeReturn);
             }
         }
-        return new ReturnType(ReturnType.ReturnKind.Normal);
+        return ReturnType.NORMAL;
     }
 
     private class Tuple<T, U> {
@@ -908,21 +1553,89 @@ public class Interpreter {
         }
     }
 
+    // works out the most fields the program could ever look at, so records only get
+    // split that far
+    // if the program uses NF, a field index we only know when running, or modifies a
+    // field we need all of them
+    private static int fieldsNeeded(ProgramNode program) {
+        var needed = new int[] { 0 };
+        Consumer<Node> needAll = (n) -> needed[0] = Integer.MAX_VALUE;
+        Consumer<Node> modifies = (n) -> {
+            if (n instanceof OperationNode op && op.getOperation() == OperationNode.Operation.DOLLAR) {
+                needAll.accept(n);
+            }
+        };
+        NodeWalker.walk(program, node -> {
+            switch (node) {
+                case OperationNode op when op.getOperation() == OperationNode.Operation.DOLLAR -> {
+                    var index = op.getLeft() instanceof ConstantNode c ? c.newValue() : null;
+                    if (index != null && index.isNumber()) {
+                        var field = index.getNumber();
+                        needed[0] = Math.max(needed[0], field < 0 ? Integer.MAX_VALUE : (int) field);
+                    } else {
+                        needAll.accept(node);
+                    }
+                }
+                case OperationNode op -> {
+                    switch (op.getOperation()) {
+                        case PREINC, POSTINC, PREDEC, POSTDEC -> modifies.accept(op.getLeft());
+                        default -> {
+                        }
+                    }
+                }
+                case AssignmentNode assignment -> modifies.accept(assignment.getTarget());
+                case VariableReferenceNode variable when variable.getName().equals("NF") -> needAll.accept(node);
+                // builtins that can assign to what there given
+                case FunctionCallNode call when List.of("sub", "gsub", "getline")
+                        .contains(call.getFunctionName()) -> call.getParameters().forEach(modifies);
+                default -> {
+                }
+            }
+        });
+        return needed[0];
+    }
+
     public void InterpretProgram() {
+        fieldLimit = fieldsNeeded(program);
+        // anything still in the output buffer has to be written even if the program
+        // fails
+        try {
+            runProgram();
+        } finally {
+            output.flush();
+        }
+    }
+
+    // System.exit doesnt run finally blocks, so we flush the output first
+    private void exit(int status) {
+        output.flush();
+        System.exit(status);
+    }
+
+    private void runProgram() {
         try {
             blockInterpreter(new LinkedList<>() {
                 {
                     add(new Tuple<>(Next.class,
                             e -> new AwkRuntimeError.NextInBeginError()));
+                    add(new Tuple<>(NextFile.class,
+                            e -> new AwkRuntimeError.NextFileInBeginError()));
                 }
             }, program.getBeginBlocks());
-            while (input.SplitAndAssign()) {
-                try {
-                    for (var block : program.getRestBlocks()) {
-                        InterpretBlock(block);
+            // like awk a program with only begin blocks never reads its input (so it
+            // doesnt wait on stdin)
+            boolean readsInput = !program.getRestBlocks().isEmpty() || !program.getEndBlocks().isEmpty();
+            if (!runInParallel()) {
+                while (readsInput && input.SplitAndAssign()) {
+                    try {
+                        for (var block : program.getRestBlocks()) {
+                            InterpretBlock(block);
+                        }
+                    } catch (Next e) {
+                        // just continue
+                    } catch (NextFile e) {
+                        input.skipFile();
                     }
-                } catch (Next e) {
-                    // just continue
                 }
             }
             // catch an exit in begin/other blocks
@@ -932,27 +1645,94 @@ public class Interpreter {
                 {
                     add(new Tuple<>(Next.class,
                             e -> new AwkRuntimeError.NextInEndError()));
+                    add(new Tuple<>(NextFile.class,
+                            e -> new AwkRuntimeError.NextFileInEndError()));
                     // we dont handle exit in end blocks as we are already exiting
                 }
             }, program.getEndBlocks());
-            System.exit(e.status);
+            exit(e.status);
         }
         blockInterpreter(new LinkedList<>() {
             {
                 add(new Tuple<>(Next.class,
                         e -> new AwkRuntimeError.NextInEndError()));
+                add(new Tuple<>(NextFile.class,
+                        e -> new AwkRuntimeError.NextFileInEndError()));
                 // handle exit in end blocks
                 add(new Tuple<>(Exit.class,
                         e -> {
-                            System.exit(((Exit) e).status);
+                            exit(((Exit) e).status);
                             return new RuntimeException();
                         }));
             }
         }, program.getEndBlocks());
     }
 
+    // runs the main rules on all the input on more than one thread if the program can
+    // be (see ParallelAnalysis and Accumulators), false if it has to be run one record
+    // at a time
+    private boolean runInParallel() {
+        if (parallelism < 2 || program.getRestBlocks().isEmpty()) {
+            return false;
+        }
+        var accumulators = Accumulators.find(program);
+        if (!ParallelAnalysis.isRecordIndependent(accumulators.getProgram()) || !accumulators.canStart(this)) {
+            return false;
+        }
+        new ParallelRunner(this, parallelism, accumulators).run();
+        return true;
+    }
+
+    // reads the next record for ParallelRunner, it becomes $0 in one of the copies
+    // (see runRecord) instead of here
+    Optional<String> nextRecord() {
+        record.detach();
+        return input.advance().map(CharSequence::toString);
+    }
+
+    // makes line $0 (for the end blocks once ParallelRunner is done)
+    void setRecord(String line) {
+        record.setRecord(line);
+    }
+
+    // runs the main rules for one record on a copy of the interpreter (see
+    // ParallelRunner), with NR, FNR and FILENAME as they were when it was read
+    void runRecord(String line, double recordNumber, double fileRecordNumber, String fileName) {
+        getGlobal("NR").setContents(recordNumber);
+        getGlobal("FNR").setContents(fileRecordNumber);
+        var fileNameVariable = getGlobal("FILENAME");
+        if (!fileNameVariable.getContents(conversionFormat).equals(fileName)) {
+            fileNameVariable.setContents(fileName);
+        }
+        record.setRecord(line);
+        try {
+            for (var block : program.getRestBlocks()) {
+                InterpretBlock(block);
+            }
+        } catch (Next e) {
+            // just continue
+        }
+    }
+
     public void InterpretBlock(BlockNode block) {
-        if (block.getCondition().map(cond -> truthyValue(GetIDT(cond, null).getContents()) == "1").orElse(true)) {
+        if (machine != null) {
+            machine.run(block);
+            return;
+        }
+        if (bytecode != null && bytecode.run(block)) {
+            return;
+        }
+        if (compiler != null) {
+            var compiled = compiler.block(block);
+            if (compiled.shouldRun()) {
+                var returnValue = compiled.execute(null);
+                if (returnValue.getReturnKind() != ReturnType.ReturnKind.Normal) {
+                    throw new AwkRuntimeError.ReturnInOuterBlockError(returnValue);
+                }
+            }
+            return;
+        }
+        if (block.getCondition().map(cond -> truthyValue(GetIDT(cond, (Frame) null)) == "1").orElse(true)) {
             var returnValue = InterpretListOfStatements(block, null);
             if (returnValue.getReturnKind() != ReturnType.ReturnKind.Normal) {
                 throw new AwkRuntimeError.ReturnInOuterBlockError(returnValue);
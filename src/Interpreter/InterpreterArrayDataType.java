@@ -51,7 +51,7 @@ public class InterpreterArrayDataType extends InterpreterDataType {
 
     // make sure that if we try to get it like its a scalar that we throw exception
     @Override
-    public String getContents() {
+    public String getContents(String conversionFormat) {
         throw new AwkRuntimeError.ExpectedScalarError(this);
     }
 
@@ -61,6 +61,11 @@ public class InterpreterArrayDataType extends InterpreterDataType {
         throw new AwkRuntimeError.ExpectedScalarError(this);
     }
 
+    @Override
+    public void setContents(double contents) {
+        throw new AwkRuntimeError.ExpectedScalarError(this);
+    }
+
     public void insert(String name, InterpreterDataType value) {
         contents.put(name, value);
     }
@@ -1,12 +1,51 @@
 public class InterpreterDataType {
+    // a value can be a string, a number or both (like awks strnums)
+    // numbers from math stay numbers and only get turned into a string when they
+    // are needed as one (printing, concatenating), and strings (like fields) only
+    // ever get parsed into a number once
+    private enum NumberState {
+        // we have a string but havent tried parsing it yet
+        Unknown,
+        Number,
+        NotANumber
+    }
+
+    // null if we only have the number and havent made the string yet
     private String contents = "";
+    private double number;
+    private NumberState numberState = NumberState.Unknown;
+    // whether this value started out as a number, if so the string is made with
+    // CONVFMT (or OFMT when printing)
+    private boolean fromNumber = false;
+    // the CONVFMT the string was made with, if CONVFMT changes we need to make it
+    // again
+    private String convertedWith;
 
     public void setContents(String contents) {
         this.contents = contents;
+        numberState = NumberState.Unknown;
+        fromNumber = false;
+    }
+
+    public void setContents(double contents) {
+        this.contents = null;
+        number = contents;
+        numberState = NumberState.Number;
+        fromNumber = true;
     }
 
-    public void setContents(Float contents) {
-        this.contents = contents % 1 == 0 ? String.valueOf(contents.intValue()) : String.valueOf(contents);
+    // sets this to whatever value is, keeping it as a number if it is one
+    public void setContents(InterpreterDataType value) {
+        if (value.fromNumber) {
+            setContents(value.number);
+        } else {
+            setContents(value.getContents());
+            // we already know if the string is a number
+            if (numberState == NumberState.Unknown) {
+                number = value.number;
+                numberState = value.numberState;
+            }
+        }
     }
 
     public InterpreterDataType() {
@@ -16,32 +55,126 @@ public class InterpreterDataType {
         this.contents = contents;
     }
 
-    public InterpreterDataType(float contents) {
-        setContents(contents);
+    public InterpreterDataType(double contents) {
+        this.contents = null;
+        number = contents;
+        numberState = NumberState.Number;
+        fromNumber = true;
     }
 
-    public String getContents() {
+    // the string version of this value, making it from the number with
+    // conversionFormat (the CONVFMT of whichever interpreter is using it) if we need
+    // to
+    public String getContents(String conversionFormat) {
+        if (fromNumber && (contents == null || convertedWith != conversionFormat)) {
+            convertedWith = conversionFormat;
+            contents = NumberFormatter.toString(number, conversionFormat);
+        }
         return contents;
     }
 
+    // the same with the default CONVFMT, for when there isnt an interpreter to get it
+    // from (parsing, error messages)
+    public String getContents() {
+        return getContents("%.6g");
+    }
+
+    // the string to use when printing this value, numbers are formatted with
+    // outputFormat (OFMT) instead of CONVFMT
+    public String getOutputContents(String outputFormat) {
+        if (fromNumber) {
+            return NumberFormatter.toString(number, outputFormat);
+        }
+        return getContents(outputFormat);
+    }
+
+    // writes this value the way print does, the same as getOutputContents but
+    // numbers are written without making a string for them
+    public void print(Output output, String outputFormat) {
+        if (fromNumber) {
+            output.writeNumber(number, outputFormat);
+        } else {
+            output.write(getCharSequence(outputFormat));
+        }
+    }
+
+    // the same chars as getContents, for things that only read them right away
+    // (comparing, matching, printing), so values that are still part of the input
+    // (see Interpreter.Record) dont have to make a string
+    public CharSequence getCharSequence(String conversionFormat) {
+        return getContents(conversionFormat);
+    }
+
+    // whether this value can be used as a number, if it is getNumber gives back the
+    // number
+    // the string is only parsed the first time this is called
+    public boolean isNumber() {
+        if (numberState == NumberState.Unknown) {
+            var string = getContents();
+            if (NumberParser.isNumber(string)) {
+                number = NumberParser.parse(string);
+                numberState = NumberState.Number;
+            } else {
+                numberState = NumberState.NotANumber;
+            }
+        }
+        return numberState == NumberState.Number;
+    }
+
+    // only valid if isNumber is true
+    public double getNumber() {
+        return number;
+    }
+
+    // for values that only make there string when its needed (see
+    // Interpreter.Record.Field)
+
+    // whether we already know if this is a number
+    protected boolean isParsed() {
+        return numberState != NumberState.Unknown;
+    }
+
+    protected void setParsed(boolean isNumber, double number) {
+        this.number = number;
+        numberState = isNumber ? NumberState.Number : NumberState.NotANumber;
+    }
+
+    // sets the string without forgetting whether its a number
+    protected void setString(String contents) {
+        this.contents = contents;
+    }
+
     @Override
     // this is only used for error handling purposes within the interpreter we
     // generally use getContents to make sure that in the case its an array it
     // throws an exception
     public String toString() {
-        return contents;
+        return getContents();
+    }
+
+    // a copy of a scalar value (for an array this throws like getContents), for
+    // values that outlive where they came from like what a function returns
+    public static InterpreterDataType scalarCopy(InterpreterDataType value) {
+        var copy = new InterpreterDataType();
+        copy.setContents(value);
+        return copy;
     }
 
     // cloning an IDT means you cannot modify the current IDT through the cloned one
     public InterpreterDataType Clone() {
-        return new InterpreterDataType(contents);
+        var clone = new InterpreterDataType(contents);
+        clone.number = number;
+        clone.numberState = numberState;
+        clone.fromNumber = fromNumber;
+        clone.convertedWith = convertedWith;
+        return clone;
     }
 
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((contents == null) ? 0 : contents.hashCode());
+        result = prime * result + getContents().hashCode();
         return result;
     }
 
@@ -54,11 +187,6 @@ public class InterpreterDataType {
         if (getClass() != obj.getClass())
             return false;
         InterpreterDataType other = (InterpreterDataType) obj;
-        if (contents == null) {
-            if (other.contents != null)
-                return false;
-        } else if (!contents.equals(other.contents))
-            return false;
-        return true;
+        return getContents().equals(other.getContents());
     }
 }
@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// reads records out of a regular file by mapping it into memory instead of going
+// through a reader, so the bytes dont get copied into a buffer and then decoded
+// into a char[] before the record is made, records that are all ascii are just
+// copied into a RecordBytes (so they dont need a string at all)
+// a mapping can be at most 2gb so the file is mapped a window at a time, each
+// window ends right after the last separator in it so a record is never split
+// between two mappings (if a record doesnt fit the window is made bigger)
+// only works for utf-8 with a separator thats a single ascii character (so its
+// always that byte), once RS is anything else the rest of the file is read by a
+// RecordReader
+public class MappedRecordReader implements RecordSource {
+    private static final int WINDOW = 1 << 26;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private FileChannel channel;
+    // the size of the file when it was opened, anything added after is not read
+    private long size;
+    private int window;
+    // where the current window starts in the file, and where the next one will
+    private long start = 0;
+    private long next = 0;
+    private MappedByteBuffer mapped = null;
+    // the separator the current window ends at
+    private byte windowSeparator;
+    // position is where the next record starts in the window, limit is where the
+    // window ends
+    private int position = 0;
+    private int limit = 0;
+    // the current record, if its ascii
+    private RecordBytes record = new RecordBytes();
+    private String terminator = "";
+    // reads the rest of the file once the separator isnt a single byte
+    private RecordReader rest = null;
+
+    public MappedRecordReader(Path file, int window) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        this.window = window;
+    }
+
+    public MappedRecordReader(Path file) throws IOException {
+        this(file, WINDOW);
+    }
+
+    @Override
+    public Optional<CharSequence> readRecord(RecordSeparator separator) throws IOException {
+        if (rest == null && !separator.isByte()) {
+            channel.position(start + position);
+            rest = new RecordReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        }
+        if (rest != null) {
+            return rest.readRecord(separator);
+        }
+        byte target = (byte) separator.getCharacter();
+        if (position < limit && target != windowSeparator) {
+            // RS changed so the window has to end at the new separator
+            next = start + position;
+            position = limit = 0;
+        }
+        if (position == limit && !map(target)) {
+            return Optional.empty();
+        }
+        // 8 bytes at a time (like memchr), xoring with the separator makes the byte
+        // thats the separator 0, and (x - 0x01..) & ~x & 0x80.. has the high bit of
+        // the first byte thats 0 set
+        // every byte before the separator is ored into seen, so its high bits tell us
+        // if any of them arent ascii
+        long pattern = (target & 0xffL) * ONES;
+        long seen = 0;
+        int end = position;
+        int found = -1;
+        while (end + 8 <= limit) {
+            long word = mapped.getLong(end);
+            long x = word ^ pattern;
+            long zeros = (x - ONES) & ~x & HIGH_BITS;
+            if (zeros != 0) {
+                int bytes = Long.numberOfTrailingZeros(zeros) >>> 3;
+                seen |= word & ((1L << (bytes * 8)) - 1);
+                found = end + bytes;
+                break;
+            }
+            seen |= word;
+            end += 8;
+        }
+        if (found == -1) {
+            for (; end < limit; end++) {
+                byte b = mapped.get(end);
+                if (b == target) {
+                    found = end;
+                    break;
+                }
+                seen |= b & 0xff;
+            }
+        }
+        // only the last record in the file can be missing its separator
+        end = found == -1 ? limit : found;
+        int length = end - position;
+        CharSequence read;
+        if ((seen & HIGH_BITS) == 0) {
+            mapped.get(position, record.reset(length), 0, length);
+            read = record;
+        } else {
+            var bytes = new byte[length];
+            mapped.get(position, bytes);
+            read = new String(bytes, StandardCharsets.UTF_8);
+        }
+        terminator = found == -1 ? "" : separator.getTerminator();
+        position = found == -1 ? limit : found + 1;
+        return Optional.of(read);
+    }
+
+    @Override
+    public String getTerminator() {
+        return rest != null ? rest.getTerminator() : terminator;
+    }
+
+    // maps the next window so it ends at separator, returns false if the whole file
+    // has been read
+    private boolean map(byte separator) throws IOException {
+        start = next;
+        if (start >= size) {
+            return false;
+        }
+        windowSeparator = separator;
+        long length = Math.min(window, size - start);
+        while (true) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            position = 0;
+            if (start + length == size) {
+                limit = (int) length;
+                next = size;
+                return true;
+            }
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (mapped.get(i) == separator) {
+                    limit = i + 1;
+                    next = start + limit;
+                    return true;
+                }
+            }
+            // the next record doesnt fit so try again with a bigger window
+            if (length == Integer.MAX_VALUE) {
+                throw new IOException("record longer than " + Integer.MAX_VALUE + " bytes");
+            }
+            length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - start);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping stays around until its garbage collected, but nothing uses it
+        // after this
+        mapped = null;
+        position = limit = 0;
+        next = size;
+        channel.close();
+    }
+}
@@ -0,0 +1,243 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// turns numbers into strings the way awk does
+// integers are always printed as integers, anything else goes through a printf
+// style format (CONVFMT when converting to a string, OFMT when printing)
+// like c the exact value of the double is rounded, and exact ties go to the even
+// digit (java rounds the shortest decimal for the double half up instead, so 0.15
+// would be 0.2 with %.1g where c gives 0.1)
+// plain %.Ng formats (like the default %.6g) are done here without String.format
+// (see Format), anything else is rounded here and then given to String.format
+public class NumberFormatter {
+    // %g with no # flag, for these c removes trailing zeros but java does not
+    private static final Pattern GENERAL = Pattern.compile("%[-+ 0]*[0-9]*(\\.[0-9]+)?[gG]");
+    // the conversion in a format that rounds (and its precision)
+    private static final Pattern ROUNDING = Pattern.compile("%[-+ 0#]*[0-9]*(?:\\.([0-9]*))?([eEfFgG])");
+    // %g with only a precision, which we can do ourselves
+    private static final Pattern SIMPLE_GENERAL = Pattern.compile("%(\\.([0-9]+))?([gG])");
+
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final long[] LONG_POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L, 1000000000000000L, 10000000000000000L };
+
+    // a format worked out once, so we dont have to look at the format string for
+    // every number
+    private static class Format {
+        private final String format;
+        // the precision for a %g we can do ourselves, otherwise -1
+        private final int precision;
+        private final boolean upperCase;
+
+        private Format(String format) {
+            this.format = format;
+            var matcher = SIMPLE_GENERAL.matcher(format);
+            if (matcher.matches() && (matcher.group(2) == null || matcher.group(2).length() <= 2)) {
+                // %.0g is the same as %.1g
+                int given = matcher.group(2) == null ? 6 : Integer.parseInt(matcher.group(2));
+                precision = Math.max(given, 1);
+                upperCase = matcher.group(3).equals("G");
+            } else {
+                precision = -1;
+                upperCase = false;
+            }
+        }
+    }
+
+    // programs use the same one or two formats (OFMT and CONVFMT) over and over, so
+    // we only keep the last one
+    private static volatile Format last = new Format("%.6g");
+
+    private static Format compile(String format) {
+        var compiled = last;
+        if (compiled.format != format && !compiled.format.equals(format)) {
+            compiled = new Format(format);
+            last = compiled;
+        }
+        return compiled;
+    }
+
+    // whether number is printed as an integer, only if a long holds it exactly
+    // (casting saturates, so without the bound 2^63 and up would all print as
+    // Long.MAX_VALUE)
+    public static boolean isInteger(double number) {
+        return number == Math.rint(number) && Math.abs(number) < 0x1p63;
+    }
+
+    public static String toString(double number, String format) {
+        if (isInteger(number)) {
+            return Long.toString((long) number);
+        }
+        var compiled = compile(format);
+        if (compiled.precision != -1) {
+            var formatted = new StringBuilder(24);
+            if (appendGeneral(formatted, number, compiled.precision, compiled.upperCase)) {
+                return formatted.toString();
+            }
+        }
+        return format(format, number);
+    }
+
+    // like toString but adds the number to out (so printing doesnt have to make a
+    // string for each number)
+    public static void append(StringBuilder out, double number, String format) {
+        if (isInteger(number)) {
+            out.append((long) number);
+            return;
+        }
+        var compiled = compile(format);
+        int length = out.length();
+        if (compiled.precision == -1 || !appendGeneral(out, number, compiled.precision, compiled.upperCase)) {
+            out.setLength(length);
+            out.append(format(format, number));
+        }
+    }
+
+    // %.<precision>g (without trailing zeros) for anything that isnt an integer
+    // the number is scaled by a power of ten so the digits we want are the integer
+    // part, and rounded, if thats to close to halfway between two numbers to tell
+    // from the scaled double the exact value is rounded instead
+    // gives back false if the number cant be done this way
+    private static boolean appendGeneral(StringBuilder out, double number, int precision, boolean upperCase) {
+        if (precision >= LONG_POWERS_OF_TEN.length || Double.isNaN(number) || Double.isInfinite(number)) {
+            return false;
+        }
+        double magnitude = Math.abs(number);
+        // the power of ten of the first digit, log10 can be off by one so we check below
+        int exponent = (int) Math.floor(Math.log10(magnitude));
+        long digits = -1;
+        for (int attempt = 0; attempt < 3 && digits == -1; attempt++) {
+            int scale = precision - 1 - exponent;
+            if (scale >= POWERS_OF_TEN.length || -scale >= POWERS_OF_TEN.length) {
+                return false;
+            }
+            double scaled = scale >= 0 ? magnitude * POWERS_OF_TEN[scale] : magnitude / POWERS_OF_TEN[-scale];
+            double whole = Math.floor(scaled);
+            double fraction = scaled - whole;
+            if (whole >= LONG_POWERS_OF_TEN[precision]) {
+                exponent++;
+            } else if (whole < LONG_POWERS_OF_TEN[precision - 1]) {
+                exponent--;
+            } else {
+                if (Math.abs(fraction - 0.5) > scaled * 0x1p-50) {
+                    digits = (long) whole + (fraction > 0.5 ? 1 : 0);
+                } else {
+                    // the scaled double could be off by more than how far it is from
+                    // halfway, so the exact value is rounded instead (ties to even)
+                    digits = new BigDecimal(magnitude).movePointRight(scale).setScale(0, RoundingMode.HALF_EVEN)
+                            .longValue();
+                }
+                // rounding up can give an extra digit (9.9999996 -> 10.0000)
+                if (digits == LONG_POWERS_OF_TEN[precision]) {
+                    digits /= 10;
+                    exponent++;
+                } else if (digits < LONG_POWERS_OF_TEN[precision - 1]) {
+                    // whole was off and the number has one less digit at this scale
+                    digits = -1;
+                    exponent--;
+                }
+            }
+        }
+        if (digits == -1) {
+            return false;
+        }
+        if (number < 0) {
+            out.append('-');
+        }
+        int start = out.length();
+        out.append(digits);
+        if (exponent < -4 || exponent >= precision) {
+            // d.ddde+XX
+            out.insert(start + 1, '.');
+            stripZeros(out, start + 1);
+            out.append(upperCase ? 'E' : 'e');
+            out.append(exponent < 0 ? '-' : '+');
+            if (Math.abs(exponent) < 10) {
+                out.append('0');
+            }
+            out.append(Math.abs(exponent));
+        } else if (exponent >= 0) {
+            out.insert(start + exponent + 1, '.');
+            stripZeros(out, start + exponent + 1);
+        } else {
+            // 0.000ddd
+            for (int i = exponent; i < 0; i++) {
+                out.insert(start, '0');
+            }
+            out.insert(start + 1, '.');
+            stripZeros(out, start + 1);
+        }
+        return true;
+    }
+
+    // removes trailing zeros after the decimal point at point (and the point itself
+    // if nothing is left after it)
+    private static void stripZeros(StringBuilder out, int point) {
+        int last = out.length();
+        while (last > point + 1 && out.charAt(last - 1) == '0') {
+            last--;
+        }
+        out.setLength(last == point + 1 ? point : last);
+    }
+
+    public static String format(String format, double number) {
+        if (Double.isNaN(number)) {
+            return "nan";
+        } else if (Double.isInfinite(number)) {
+            return number > 0 ? "inf" : "-inf";
+        }
+        var formatted = String.format(Locale.ROOT, format, rounded(format, number));
+        if (GENERAL.matcher(format).matches()) {
+            return stripZeros(formatted);
+        }
+        return formatted;
+    }
+
+    // for %e, %f and %g the exact value of number already rounded (half to even) to
+    // the digits the format prints, so String.format has nothing left to round
+    private static Object rounded(String format, double number) {
+        var matcher = ROUNDING.matcher(format);
+        if (number == 0 || !matcher.find()) {
+            return number;
+        }
+        var given = matcher.group(1);
+        int precision = given == null ? 6 : given.isEmpty() ? 0 : Integer.parseInt(given);
+        var exact = new BigDecimal(number);
+        var rounded = switch (Character.toLowerCase(matcher.group(2).charAt(0))) {
+            case 'f' -> exact.setScale(precision, RoundingMode.HALF_EVEN);
+            case 'e' -> exact.round(new MathContext(precision + 1, RoundingMode.HALF_EVEN));
+            // %.0g is the same as %.1g
+            default -> exact.round(new MathContext(Math.max(precision, 1), RoundingMode.HALF_EVEN));
+        };
+        // big decimals dont have -0, c still prints the sign of something that rounds
+        // to 0
+        return rounded.signum() == 0 ? Math.copySign(0.0, number) : rounded;
+    }
+
+    // removes trailing zeros after the decimal point (and the point itself if
+    // nothing is left after it), leaving any exponent as is
+    private static String stripZeros(String formatted) {
+        int exponent = formatted.indexOf('e');
+        if (exponent == -1) {
+            exponent = formatted.indexOf('E');
+        }
+        int end = exponent == -1 ? formatted.length() : exponent;
+        int point = formatted.indexOf('.');
+        if (point == -1 || point > end) {
+            return formatted;
+        }
+        int last = end;
+        while (last > point + 1 && formatted.charAt(last - 1) == '0') {
+            last--;
+        }
+        if (last == point + 1) {
+            last = point;
+        }
+        return formatted.substring(0, last) + formatted.substring(end);
+    }
+}
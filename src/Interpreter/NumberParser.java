@@ -0,0 +1,181 @@
+// works out if a string is a number the way awk does, without throwing
+// (Double.parseDouble throws for every string that isnt a number, which for
+// things like comparing fields to strings would happen for every record)
+// a number is an optional sign then digits with an optional decimal point (at
+// least one digit) and an optional exponent, or a signed inf or nan like gawk,
+// with any blanks around it, only blanks is 0
+// both work on part of a string, so fields can be parsed straight out of the
+// record (see Interpreter.Record.Field) without making a string for them
+public class NumberParser {
+    // powers of ten that are exact as doubles
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    // the most digits we keep in a long before having to use Double.parseDouble
+    private static final int MAX_DIGITS = 18;
+
+    public static boolean isNumber(CharSequence value) {
+        return isNumber(value, 0, value.length());
+    }
+
+    // whether value from start to end is a number, if it is parse gives back the
+    // number
+    public static boolean isNumber(CharSequence value, int start, int end) {
+        start = skipBlanks(value, start, end);
+        end = trimEnd(value, start, end);
+        if (start == end) {
+            return true;
+        }
+        int i = start;
+        if (value.charAt(i) == '+' || value.charAt(i) == '-') {
+            i++;
+            if (isSpecial(value, i, end)) {
+                return true;
+            }
+        }
+        int digits = 0;
+        while (i < end && isDigit(value.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && value.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(value.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < end && isDigit(value.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    public static double parse(CharSequence value) {
+        return parse(value, 0, value.length());
+    }
+
+    // only valid if isNumber is true for the same part of value
+    // the digits are read into a long, if that and the power of ten are both exact
+    // doubles one multiply or divide gives the correctly rounded result, anything
+    // else (lots of digits, big exponents) goes through Double.parseDouble
+    public static double parse(CharSequence value, int start, int end) {
+        start = skipBlanks(value, start, end);
+        end = trimEnd(value, start, end);
+        if (start == end) {
+            return 0;
+        }
+        int i = start;
+        boolean negative = value.charAt(i) == '-';
+        if (negative || value.charAt(i) == '+') {
+            i++;
+            if (isSpecial(value, i, end)) {
+                double special = Character.toLowerCase(value.charAt(i)) == 'i' ? Double.POSITIVE_INFINITY
+                        : Double.NaN;
+                return negative ? -special : special;
+            }
+        }
+        long digits = 0;
+        int kept = 0;
+        int exponent = 0;
+        boolean exact = true;
+        for (; i < end && isDigit(value.charAt(i)); i++) {
+            if (kept < MAX_DIGITS) {
+                digits = digits * 10 + (value.charAt(i) - '0');
+                // leading zeros dont count
+                kept += digits == 0 ? 0 : 1;
+            } else {
+                exact = false;
+            }
+        }
+        if (i < end && value.charAt(i) == '.') {
+            for (i++; i < end && isDigit(value.charAt(i)); i++) {
+                if (kept < MAX_DIGITS) {
+                    digits = digits * 10 + (value.charAt(i) - '0');
+                    kept += digits == 0 ? 0 : 1;
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+            }
+        }
+        if (i < end) {
+            // the exponent
+            i++;
+            boolean negativeExponent = value.charAt(i) == '-';
+            if (negativeExponent || value.charAt(i) == '+') {
+                i++;
+            }
+            int given = 0;
+            for (; i < end; i++) {
+                // past this its inf or 0 anyways, which Double.parseDouble will work out
+                if (given > 100000) {
+                    exact = false;
+                    break;
+                }
+                given = given * 10 + (value.charAt(i) - '0');
+            }
+            exponent += negativeExponent ? -given : given;
+        }
+        if (exact && digits < (1L << 53)) {
+            double number = -1;
+            if (exponent == 0) {
+                number = digits;
+            } else if (exponent > 0 && exponent < POWERS_OF_TEN.length) {
+                number = digits * POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                number = digits / POWERS_OF_TEN[-exponent];
+            }
+            if (number != -1) {
+                return negative ? -number : number;
+            }
+        }
+        return Double.parseDouble(value.subSequence(start, end).toString());
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // inf or nan (after the sign)
+    private static boolean isSpecial(CharSequence value, int i, int end) {
+        return end - i == 3 && (matches(value, i, "inf") || matches(value, i, "nan"));
+    }
+
+    private static boolean matches(CharSequence value, int i, String word) {
+        for (int j = 0; j < word.length(); j++) {
+            if (Character.toLowerCase(value.charAt(i + j)) != word.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // blanks are anything trim would remove
+    private static int skipBlanks(CharSequence value, int i, int end) {
+        while (i < end && value.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimEnd(CharSequence value, int start, int end) {
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.BufferedWriter;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+
+// where print and printf write to
+// output is kept in a big buffer and only written out when the buffer is full,
+// the program exits or fflush is called, instead of going through System.out
+// (which is synchronized and flushes all the time) for every record
+// theres no way to tell if stdout is a terminal (System.console is null whenever
+// stdin isnt one either), so instead the output is flushed before waiting on
+// input (see RecordReader), which is when someone watching would notice
+public class Output {
+    private Writer writer;
+    private boolean flushEachRecord;
+    // numbers are formatted into here and copied straight into the writer, so
+    // printing a number doesnt make a string
+    private StringBuilder number = new StringBuilder(32);
+    private char[] chars = new char[32];
+
+    public Output(Writer writer, boolean flushEachRecord) {
+        this.writer = writer;
+        this.flushEachRecord = flushEachRecord;
+    }
+
+    public Output(PrintStream stream) {
+        this(new BufferedWriter(new OutputStreamWriter(stream, stream.charset()), 1 << 16), false);
+    }
+
+    public void write(String text) {
+        try {
+            writer.write(text);
+        } catch (IOException e) {
+            throw new AwkRuntimeError.OutputError(e);
+        }
+    }
+
+    // for things that arent strings (like RecordBytes) the chars are copied
+    // straight into the writer
+    public void write(CharSequence text) {
+        if (text instanceof String string) {
+            write(string);
+            return;
+        }
+        int length = text.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            chars[i] = text.charAt(i);
+        }
+        try {
+            writer.write(chars, 0, length);
+        } catch (IOException e) {
+            throw new AwkRuntimeError.OutputError(e);
+        }
+    }
+
+    // writes out what was printed somewhere else (see ParallelRunner)
+    public void write(CharArrayWriter printed) {
+        try {
+            printed.writeTo(writer);
+        } catch (IOException e) {
+            throw new AwkRuntimeError.OutputError(e);
+        }
+    }
+
+    // writes a number the way print does (see NumberFormatter), format is OFMT
+    public void writeNumber(double value, String format) {
+        number.setLength(0);
+        NumberFormatter.append(number, value, format);
+        int length = number.length();
+        if (length > chars.length) {
+            chars = new char[length];
+        }
+        number.getChars(0, length, chars, 0);
+        try {
+            writer.write(chars, 0, length);
+        } catch (IOException e) {
+            throw new AwkRuntimeError.OutputError(e);
+        }
+    }
+
+    // called after each print/printf is done
+    public void endRecord() {
+        if (flushEachRecord) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new AwkRuntimeError.OutputError(e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// works out whether the main rules of a program can be run for records in any
+// order (so on different threads, see ParallelRunner) and still do the same thing
+// they can if running them for one record cant change what they do for another:
+// - no globals are assigned (fields, NF and $0 are fine as there per record)
+// - no input is read (getline) and reading isnt stopped early (nextfile, exit)
+// - arrays that are indexed (which makes the element if its not there) are never
+// looked at as a whole (in, for in, length, ...) so the made elements dont matter
+// anything we dont understand (like calling a function that doesnt exist) means
+// the program has to be run one record at a time
+public class ParallelAnalysis {
+    // builtins that cant be run out of order
+    private static final Set<String> SERIAL_BUILTINS = Set.of("getline", "nextfile", "exit", "fflush");
+    // builtins that only look at there arguments (or $0) and dont change anything
+    private static final Set<String> PURE_BUILTINS = Set.of("print", "printf", "sprintf", "index", "length",
+            "substr", "tolower", "toupper", "next", Accumulators.BUILTIN);
+
+    private HashMap<String, FunctionNode> functions = new HashMap<>();
+    // functions we have already looked at (or are looking at for recursive ones)
+    private Set<String> checked = new HashSet<>();
+    private boolean independent = true;
+    // globals that are indexed, and globals that are used without an index
+    private Set<String> indexed = new HashSet<>();
+    private Set<String> used = new HashSet<>();
+    private boolean recordModified = false;
+
+    private ParallelAnalysis(ProgramNode program) {
+        program.getFunctions().forEach(f -> functions.put(f.getName(), f));
+    }
+
+    public static boolean isRecordIndependent(ProgramNode program) {
+        var analysis = new ParallelAnalysis(program);
+        for (var block : program.getRestBlocks()) {
+            analysis.check(block, List.of());
+        }
+        if (!analysis.independent) {
+            return false;
+        }
+        // an indexed array cant be looked at as a whole anywhere else either, like from
+        // an end block (which would see the elements made by indexing it)
+        var elsewhere = new HashSet<String>();
+        for (var function : program.getFunctions()) {
+            NodeWalker.walk(function, n -> {
+                if (n instanceof VariableReferenceNode v && v.getIndex().isEmpty()
+                        && !function.getParameters().contains(v.getName())) {
+                    elsewhere.add(v.getName());
+                }
+            });
+        }
+        var endTouchesRecord = new boolean[] { false };
+        for (var block : program.getEndBlocks()) {
+            NodeWalker.walk(block, n -> {
+                if (n instanceof VariableReferenceNode v && v.getIndex().isEmpty()) {
+                    elsewhere.add(v.getName());
+                }
+                endTouchesRecord[0] |= touchesRecord(n);
+            });
+        }
+        for (var array : analysis.indexed) {
+            if (analysis.used.contains(array) || elsewhere.contains(array)) {
+                return false;
+            }
+        }
+        // end blocks see the last record as it was read, not as the main rules left it
+        return !(analysis.recordModified && endTouchesRecord[0]);
+    }
+
+    // whether node uses the current record (so an end block with it sees the last
+    // record)
+    private static boolean touchesRecord(Node node) {
+        return switch (node) {
+            case OperationNode op -> op.getOperation() == OperationNode.Operation.DOLLAR;
+            case VariableReferenceNode v -> v.getName().equals("NF");
+            // a regex on its own matches $0
+            case PatternNode p -> true;
+            // lots of builtins use $0 if there not given anything
+            case FunctionCallNode call -> call.getParameters().isEmpty()
+                    || !PURE_BUILTINS.contains(call.getFunctionName()) && !call.getFunctionName().equals("match");
+            default -> false;
+        };
+    }
+
+    // parameters are the locals of the function node is in (none for the main rules)
+    private void check(Node node, List<String> parameters) {
+        NodeWalker.walk(node, n -> {
+            switch (n) {
+                case AssignmentNode assignment -> assigned(assignment.getTarget(), parameters);
+                case OperationNode op -> {
+                    switch (op.getOperation()) {
+                        case PREINC, POSTINC, PREDEC, POSTDEC -> assigned(op.getLeft(), parameters);
+                        default -> {
+                        }
+                    }
+                }
+                // RT is set as each record is read, which the copies of the interpreter dont
+                // do
+                case VariableReferenceNode v when v.getName().equals("RT") && !parameters.contains("RT") ->
+                    independent = false;
+                case VariableReferenceNode v when !parameters.contains(v.getName()) -> {
+                    if (v.getIndex().isPresent()) {
+                        indexed.add(v.getName());
+                    } else {
+                        used.add(v.getName());
+                    }
+                }
+                // a parameter thats indexed is an array passed in by the caller, which we
+                // dont keep track of
+                case VariableReferenceNode v when v.getIndex().isPresent() -> independent = false;
+                // the index of a for in is always assigned
+                case ForEachNode f when !parameters.contains(f.getIndex()) -> independent = false;
+                // deleting is from a global array or one passed in
+                case DeleteNode d -> independent = false;
+                case FunctionCallNode call -> called(call, parameters);
+                default -> {
+                }
+            }
+        });
+    }
+
+    private void called(FunctionCallNode call, List<String> parameters) {
+        var name = call.getFunctionName();
+        var arguments = call.getParameters();
+        if (SERIAL_BUILTINS.contains(name)) {
+            independent = false;
+        } else if (name.equals("sub") || name.equals("gsub")) {
+            if (arguments.size() > 2) {
+                assigned(arguments.get(2), parameters);
+            } else {
+                recordModified = true;
+            }
+        } else if (name.equals("split") || name.equals("match")) {
+            // split fills in an array and match sets RSTART and RLENGTH
+            independent = false;
+        } else if (functions.containsKey(name)) {
+            // the arguments are copied (arrays arent, but the function cant index them or
+            // assign to them, see check and assigned), so only what the function itself
+            // does matters
+            if (checked.add(name)) {
+                var function = functions.get(name);
+                function.getStatements().forEach(statement -> check(statement, function.getParameters()));
+            }
+        } else if (!PURE_BUILTINS.contains(name)) {
+            independent = false;
+        }
+    }
+
+    private void assigned(Node target, List<String> parameters) {
+        switch (target) {
+            case OperationNode op when op.getOperation() == OperationNode.Operation.DOLLAR -> recordModified = true;
+            case VariableReferenceNode v when v.getName().equals("NF") && !parameters.contains("NF") ->
+                recordModified = true;
+            // copies of what the caller passed in, unless there arrays
+            case VariableReferenceNode v when parameters.contains(v.getName()) && v.getIndex().isEmpty() -> {
+            }
+            default -> independent = false;
+        }
+    }
+}
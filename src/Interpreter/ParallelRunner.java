@@ -0,0 +1,161 @@
+import java.io.CharArrayWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// runs the main rules of a program that doesnt depend on the order of its records
+// (see ParallelAnalysis) on more than one thread
+// the input is still read on the main thread, in chunks of records, each chunk is
+// run by one of the workers (each with its own copy of the interpreter, so nothing
+// is shared between threads) and the output of each chunk is kept until all the
+// chunks before it have been written, so the output is in the same order as if the
+// records had been run one at a time
+// if running a record fails the output of every record before it is still
+// written before the error is thrown, like it would be if they were run in order
+// the updates each chunk makes to accumulators (see Accumulators) are done on the
+// interpreter when its output is written, so also in order
+public class ParallelRunner {
+    private static final int CHUNK_SIZE = 4096;
+
+    private static class Chunk {
+        private String[] records = new String[CHUNK_SIZE];
+        private double[] fileRecordNumbers = new double[CHUNK_SIZE];
+        private String[] fileNames = new String[CHUNK_SIZE];
+        private int size = 0;
+        // NR of the first record
+        private double recordNumber;
+        private CharArrayWriter output = new CharArrayWriter();
+        private Accumulators.Updates updates = new Accumulators.Updates();
+        // the first thing that went wrong, reading or running the records
+        private Throwable error = null;
+    }
+
+    private Interpreter interpreter;
+    private int threads;
+    private Accumulators accumulators;
+
+    private record Worker(Interpreter interpreter, Accumulators.Recorder recorder) {
+    }
+
+    // the copies of the interpreter that arent running a chunk
+    private LinkedBlockingQueue<Worker> workers = new LinkedBlockingQueue<>();
+    private String lastRecord = null;
+
+    // the main rules of accumulators program are run, not interpreters
+    public ParallelRunner(Interpreter interpreter, int threads, Accumulators accumulators) {
+        this.interpreter = interpreter;
+        this.threads = threads;
+        this.accumulators = accumulators;
+    }
+
+    // runs the main rules on all of the input, afterwards the last record is $0 (and
+    // NR, FNR and FILENAME are what they would be) for the end blocks
+    public void run() {
+        // the copies are made before reading anything, while nothing is changing the
+        // interpreter
+        for (int i = 0; i < threads; i++) {
+            var recorder = accumulators.new Recorder();
+            workers.add(new Worker(new Interpreter(interpreter, accumulators.getProgram(), recorder), recorder));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "awk worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // only a couple of chunks per thread are kept around, so the input is never read
+        // to far ahead of the output
+        var running = new ArrayDeque<Future<Chunk>>();
+        try {
+            while (true) {
+                var chunk = read();
+                if (chunk.size == 0 && chunk.error == null) {
+                    break;
+                }
+                running.add(pool.submit(() -> runChunk(chunk)));
+                if (chunk.error != null) {
+                    break;
+                }
+                if (running.size() >= threads * 2) {
+                    write(running.remove());
+                }
+            }
+            while (!running.isEmpty()) {
+                write(running.remove());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (lastRecord != null) {
+            interpreter.setRecord(lastRecord);
+        }
+    }
+
+    private Chunk read() {
+        var chunk = new Chunk();
+        try {
+            var recordNumber = interpreter.getGlobal("NR");
+            var fileRecordNumber = interpreter.getGlobal("FNR");
+            while (chunk.size < CHUNK_SIZE) {
+                var record = interpreter.nextRecord();
+                if (record.isEmpty()) {
+                    break;
+                }
+                if (chunk.size == 0) {
+                    chunk.recordNumber = recordNumber.getNumber();
+                }
+                chunk.records[chunk.size] = record.get();
+                chunk.fileRecordNumbers[chunk.size] = fileRecordNumber.getNumber();
+                chunk.fileNames[chunk.size] = interpreter.getGlobal("FILENAME")
+                        .getContents(interpreter.conversionFormat);
+                chunk.size++;
+                lastRecord = record.get();
+            }
+        } catch (RuntimeException e) {
+            // the records read before this still get run
+            chunk.error = e;
+        }
+        return chunk;
+    }
+
+    private Chunk runChunk(Chunk chunk) throws InterruptedException {
+        var worker = workers.take();
+        try {
+            worker.interpreter().setOutput(new Output(chunk.output, false));
+            worker.recorder().setUpdates(chunk.updates);
+            for (int i = 0; i < chunk.size; i++) {
+                worker.interpreter().runRecord(chunk.records[i], chunk.recordNumber + i, chunk.fileRecordNumbers[i],
+                        chunk.fileNames[i]);
+            }
+        } catch (RuntimeException | Error e) {
+            // this happened before any error reading the input after this chunk
+            chunk.error = e;
+        } finally {
+            workers.add(worker);
+        }
+        return chunk;
+    }
+
+    private void write(Future<Chunk> running) {
+        Chunk chunk;
+        try {
+            chunk = running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        var output = interpreter.getOutput();
+        output.write(chunk.output);
+        output.endRecord();
+        switch (chunk.error) {
+            case null -> accumulators.merge(chunk.updates, interpreter);
+            case RuntimeException e -> throw e;
+            case Error e -> throw e;
+            default -> throw new RuntimeException(chunk.error);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.nio.charset.StandardCharsets;
+
+// a record thats all ascii, kept as the bytes it was read as (see
+// MappedRecordReader) so a string only gets made for it (or its fields) if the
+// value is kept around, comparing, matching and printing just read the bytes
+// (see InterpreterDataType.getCharSequence)
+// each byte is one char, and the bytes are reused for the next record, so
+// anything that holds onto part of the record has to make a string out of it
+public class RecordBytes implements CharSequence {
+    private byte[] bytes = new byte[256];
+    private int length = 0;
+
+    // makes the record length bytes long, the bytes are filled in by whoever
+    // called this
+    byte[] reset(int length) {
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        this.length = length;
+        return bytes;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes[index];
+    }
+
+    // part of the record (like a field), which is only good until the next record
+    // is read, same as the record itself
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new Slice(start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0, length);
+    }
+
+    // latin-1 is the same as ascii for ascii, and strings are stored as latin-1 so
+    // making one is just copying the bytes
+    private String toString(int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private class Slice implements CharSequence {
+        private int offset;
+        private int length;
+
+        private Slice(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) bytes[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new Slice(offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return RecordBytes.this.toString(offset, offset + length);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+// reads records out of a reader one at a time
+// the buffer slides along the input, whatever is left of it after the last
+// record is moved to the start before reading more (and its only made bigger if
+// a record doesnt fit), so memory stays the same no matter how big the input is
+// and the first record can be processed before the rest of the input is read
+public class RecordReader implements RecordSource {
+    private Reader reader;
+    private char[] buffer;
+    // position is where the next record starts in the buffer, limit is how much of
+    // the buffer is actually filled
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    // what ended the last record
+    private String terminator = "";
+    // run before reading when the reader has nothing ready (so reading would wait
+    // for more input)
+    private Runnable beforeWaiting;
+
+    public RecordReader(Reader reader, int bufferSize, Runnable beforeWaiting) {
+        this.reader = reader;
+        buffer = new char[bufferSize];
+        this.beforeWaiting = beforeWaiting;
+    }
+
+    public RecordReader(Reader reader, int bufferSize) {
+        this(reader, bufferSize, () -> {
+        });
+    }
+
+    public RecordReader(Reader reader) {
+        this(reader, 8192);
+    }
+
+    @Override
+    public Optional<CharSequence> readRecord(RecordSeparator separator) throws IOException {
+        return switch (separator.getKind()) {
+            case Character -> readRecord(separator.getCharacter(), separator.getTerminator());
+            case Paragraph -> readParagraph(separator);
+            case Regex -> readRecord(separator, false);
+        };
+    }
+
+    @Override
+    public String getTerminator() {
+        return terminator;
+    }
+
+    private Optional<CharSequence> readRecord(char separator, String separatorTerminator) throws IOException {
+        // how much of the record we already looked through, so reading more doesnt
+        // look through it again
+        int scanned = 0;
+        while (true) {
+            for (int i = position + scanned; i < limit; i++) {
+                if (buffer[i] == separator) {
+                    return record(i, i + 1, separatorTerminator);
+                }
+            }
+            scanned = limit - position;
+            if (!fill()) {
+                return last();
+            }
+        }
+    }
+
+    private Optional<CharSequence> readParagraph(RecordSeparator separator) throws IOException {
+        // newlines before the first record dont make empty records
+        while (true) {
+            while (position < limit && buffer[position] == '\n') {
+                position++;
+            }
+            if (position < limit || !fill()) {
+                break;
+            }
+        }
+        return readRecord(separator, true);
+    }
+
+    private Optional<CharSequence> readRecord(RecordSeparator separator, boolean paragraph) throws IOException {
+        while (true) {
+            var matcher = separator.getPattern().matcher(CharBuffer.wrap(buffer, position, limit - position));
+            boolean found = false;
+            while (matcher.find()) {
+                // a separator that matches nothing does not separate anything
+                if (matcher.end() > matcher.start()) {
+                    found = true;
+                    break;
+                }
+            }
+            // the match could be longer (or there could be one) once we read more, so
+            // we only know where the record ends if it didnt get to the end of what we
+            // have
+            if (found && !matcher.hitEnd()) {
+                return record(position + matcher.start(), position + matcher.end(), matcher.group());
+            }
+            // the match is relative to position, which is the same after reading more
+            // but the chars are moved
+            int start = found ? matcher.start() : 0;
+            int end = found ? matcher.end() : 0;
+            String matched = found ? matcher.group() : null;
+            if (!fill()) {
+                if (found) {
+                    return record(position + start, position + end, matched);
+                }
+                // in paragraph mode a newline at the end of the input isnt part of the
+                // last record
+                if (paragraph && limit > position && buffer[limit - 1] == '\n') {
+                    return record(limit - 1, limit, "\n");
+                }
+                return last();
+            }
+        }
+    }
+
+    // the record from position to end, the next record starts at next
+    private Optional<CharSequence> record(int end, int next, String terminator) {
+        var record = new String(buffer, position, end - position);
+        position = next;
+        this.terminator = terminator;
+        return Optional.of(record);
+    }
+
+    // whatever is left once there is no more input, the last record doesnt need
+    // to end in a separator
+    private Optional<CharSequence> last() {
+        if (position == limit) {
+            return Optional.empty();
+        }
+        return record(limit, limit, "");
+    }
+
+    // moves whats left of the buffer to the start (making the buffer bigger if its
+    // full) and reads more after it, returns false if there is nothing left to read
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        if (!reader.ready()) {
+            beforeWaiting.run();
+        }
+        int read = reader.read(buffer, limit, buffer.length - limit);
+        // read can return 0 if there is no room to read into, but we always make room
+        if (read == -1) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// how records are separated (RS), like FieldSplitter working out what kind of
+// separator it is (and compiling the regex if its needed) is only done when RS
+// changes
+// - a single character separates records (the default is newline)
+// - an empty RS is paragraph mode, records are separated by blank lines (one or
+// more) and newlines at the start of the input are skipped
+// - anything longer is a regex, unless its just one escaped character (like \0
+// or \t) which is the same as that character
+// the text that ended each record (RT) is whatever the separator matched
+public class RecordSeparator {
+    public enum Kind {
+        Character,
+        Paragraph,
+        Regex
+    }
+
+    private static final Pattern PARAGRAPH = Pattern.compile("\n\n+");
+    // one escaped character, strings arent unescaped so RS = "\0" is a backslash
+    // and a 0
+    private static final Pattern ESCAPED = Pattern.compile("\\\\(?:([0nrtfv])|x([0-9a-fA-F]{2})|([^0-9a-zA-Z]))");
+
+    private String separator;
+    private Kind kind;
+    private char character;
+    // the character as a string, so every record it ends can use the same RT
+    private String terminator;
+    private Pattern pattern;
+
+    public RecordSeparator(String separator) {
+        this.separator = separator;
+        var escaped = ESCAPED.matcher(separator);
+        if (separator.isEmpty()) {
+            kind = Kind.Paragraph;
+            pattern = PARAGRAPH;
+        } else if (separator.length() == 1 || escaped.matches()) {
+            kind = Kind.Character;
+            character = separator.length() == 1 ? separator.charAt(0) : unescape(escaped);
+            terminator = String.valueOf(character);
+        } else {
+            kind = Kind.Regex;
+            pattern = Pattern.compile(separator);
+        }
+    }
+
+    private static char unescape(Matcher escaped) {
+        if (escaped.group(1) != null) {
+            return switch (escaped.group(1).charAt(0)) {
+                case '0' -> '\0';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 't' -> '\t';
+                case 'f' -> '\f';
+                default -> '\u000b';
+            };
+        }
+        if (escaped.group(2) != null) {
+            return (char) Integer.parseInt(escaped.group(2), 16);
+        }
+        return escaped.group(3).charAt(0);
+    }
+
+    // gives back the separator for RS, only making a new one if RS is different than
+    // what the previous one was made for
+    public static RecordSeparator forSeparator(RecordSeparator previous, String separator) {
+        return previous != null && previous.separator.equals(separator) ? previous
+                : new RecordSeparator(separator);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    // only for Character
+    public char getCharacter() {
+        return character;
+    }
+
+    public String getTerminator() {
+        return terminator;
+    }
+
+    // for Paragraph and Regex
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    // whether records can be found by looking for a single byte in utf-8 input (see
+    // MappedRecordReader)
+    public boolean isByte() {
+        return kind == Kind.Character && character < 0x80;
+    }
+}
@@ -0,0 +1,15 @@
+import java.io.IOException;
+
+// somewhere records come from (see RecordReader and MappedRecordReader)
+public interface RecordSource {
+    // returns the next record (without the separator) or empty if there are no more
+    // records
+    // the record is either a string or RecordBytes, which is only good until the
+    // next record is read
+    Optional<CharSequence> readRecord(RecordSeparator separator) throws IOException;
+
+    // what ended the last record (RT), empty if it was ended by the end of the input
+    String getTerminator();
+
+    void close() throws IOException;
+}
@@ -0,0 +1,34 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// keeps around the most recently used compiled regexes, so using the same regex
+// over and over (like ~ on every record, or gsub in a loop) only compiles it once
+// its bounded so a program that makes lots of different regexes (like from each
+// record) doesnt keep all of them forever
+public class RegexCache {
+    private LinkedHashMap<String, Pattern> patterns;
+
+    public RegexCache(int capacity) {
+        // access order makes it so the first entry is always the least recently used
+        patterns = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public Pattern get(String regex) {
+        var pattern = patterns.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            patterns.put(regex, pattern);
+        }
+        return pattern;
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+}
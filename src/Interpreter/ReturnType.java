@@ -4,10 +4,18 @@ public class ReturnType {
         Normal, Break, Continue, Return
     }
 
-    private Optional<String> returnValue = Optional.empty();
-    private ReturnKind returnKind;
+    // return types without a value never change, so these are shared instead of
+    // making a new one for every statement that runs
+    public static final ReturnType NORMAL = new ReturnType(ReturnKind.Normal);
+    public static final ReturnType BREAK = new ReturnType(ReturnKind.Break);
+    public static final ReturnType CONTINUE = new ReturnType(ReturnKind.Continue);
+    public static final ReturnType RETURN = new ReturnType(ReturnKind.Return);
 
-    public Optional<String> getReturnValue() {
+    // the value itself (not its string) so numbers keep there full precision
+    private final Optional<InterpreterDataType> returnValue;
+    private final ReturnKind returnKind;
+
+    public Optional<InterpreterDataType> getReturnValue() {
         return returnValue;
     }
 
@@ -15,12 +23,13 @@ public class ReturnType {
         return returnKind;
     }
 
-    public ReturnType(String retunrValue, ReturnType.ReturnKind returnKind) {
+    public ReturnType(InterpreterDataType retunrValue, ReturnType.ReturnKind returnKind) {
         this.returnValue = Optional.of(retunrValue);
         this.returnKind = returnKind;
     }
 
     public ReturnType(ReturnType.ReturnKind returnKind) {
+        this.returnValue = Optional.empty();
         this.returnKind = returnKind;
     }
 }
\ No newline at end of file
@@ -0,0 +1,869 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// the stack engine
+// compiles the program into flat lists of instructions for a stack machine, the
+// values being worked on and the calls to user functions that are running are
+// kept in arrays (on the heap) instead of on the java stack, so how deep awk
+// functions can recurse is only limited by memory, and calling a function is
+// just remembering where to go back to
+// instructions do the same things as the closure compiler (see Compiler), in the
+// same order
+public class StackMachine {
+    // push new value (constant)
+    private static final int CONSTANT = 0;
+    // push global (slot)
+    private static final int GLOBAL = 1;
+    // push parameter (slot)
+    private static final int LOCAL = 2;
+    // push global array (slot) / parameter array (slot, name)
+    private static final int GLOBAL_ARRAY = 3;
+    private static final int LOCAL_ARRAY = 4;
+    // key -> element of the array
+    private static final int ELEMENT = 5;
+    // index -> field (node)
+    private static final int FIELD = 6;
+    // value, target -> value
+    private static final int ASSIGN = 7;
+    // value -> its string
+    private static final int CONTENTS = 8;
+    // value -> number (numbers are on there own stack)
+    private static final int NUMBER = 9;
+    // push number (constant)
+    private static final int NUMBER_CONSTANT = 10;
+    // number -> value
+    private static final int VALUE = 11;
+    private static final int ADD = 12;
+    private static final int SUBTRACT = 13;
+    private static final int MULTIPLY = 14;
+    private static final int DIVIDE = 15;
+    private static final int MODULO = 16;
+    private static final int EXPONENT = 17;
+    private static final int NEGATE = 18;
+    // string, value -> value
+    private static final int CONCATENATE = 19;
+    // value, value -> true or false
+    private static final int EQUAL = 20;
+    private static final int NOT_EQUAL = 21;
+    private static final int LESS = 22;
+    private static final int LESS_EQUAL = 23;
+    private static final int GREATER = 24;
+    private static final int GREATER_EQUAL = 25;
+    private static final int NOT = 26;
+    private static final int TRUE = 27;
+    private static final int FALSE = 28;
+    // string -> whether it matches (pattern constant, negate)
+    private static final int MATCH_LITERAL = 29;
+    // string, pattern value -> whether it matches (negate)
+    private static final int MATCH = 30;
+    // key, array -> whether its in it
+    private static final int IN = 31;
+    // target -> value (by, pre)
+    private static final int INCREMENT = 32;
+    // value -> copy of it
+    private static final int CLONE = 33;
+    // arguments -> result (builtin constant, number of arguments)
+    private static final int BUILTIN = 34;
+    // arguments -> result of calling the function (function constant)
+    private static final int CALL = 35;
+    // value -> (returns from the function with it)
+    private static final int RETURN = 36;
+    private static final int RETURN_EMPTY = 37;
+    // value -> (return in a begin/end/normal block, which is an error)
+    private static final int RETURN_OUTSIDE = 38;
+    // (throws the error from the constant)
+    private static final int FAIL = 39;
+    private static final int POP = 40;
+    // (where)
+    private static final int JUMP = 41;
+    private static final int JUMP_IF_FALSE = 42;
+    private static final int JUMP_IF_TRUE = 43;
+    // array -> keys of the array (for for in)
+    private static final int KEYS = 44;
+    // sets the index (name constant) to the next key, or jumps (where) if there are
+    // no more keys
+    private static final int NEXT_KEY = 45;
+    // array, key ->
+    private static final int DELETE = 46;
+    // array ->
+    private static final int DELETE_ALL = 47;
+    // key -> (in with something that isnt an array, which is an error)
+    private static final int NOT_AN_ARRAY = 48;
+    // (end of a block)
+    private static final int HALT = 49;
+    // value -> its chars (see InterpreterDataType.getCharSequence)
+    private static final int CHARS = 50;
+
+    // the instructions for a block or function
+    private static class Code {
+        private int[] instructions = new int[64];
+        private int length = 0;
+
+        private void emit(int value) {
+            if (length == instructions.length) {
+                instructions = Arrays.copyOf(instructions, length * 2);
+            }
+            instructions[length++] = value;
+        }
+    }
+
+    private static class Label {
+        private int position = -1;
+        // where the jumps to this label have there target
+        private List<Integer> uses = new ArrayList<>();
+    }
+
+    private static class Function {
+        private List<String> parameters;
+        private Code code = new Code();
+
+        private Function(List<String> parameters) {
+            this.parameters = parameters;
+        }
+    }
+
+    // for for in
+    private static class Keys {
+        private String[] keys;
+        private int next = 0;
+
+        private Keys(String[] keys) {
+            this.keys = keys;
+        }
+    }
+
+    private Interpreter runtime;
+    private List<Object> constants = new ArrayList<>();
+    private Object[] pool;
+    private IdentityHashMap<BlockNode, Code> blocks = new IdentityHashMap<>();
+    private IdentityHashMap<FunctionNode, Function> functions = new IdentityHashMap<>();
+
+    // for the code being compiled
+    private Code code;
+    private List<Label> labels;
+    private boolean inFunction;
+    // where break and continue go for each loop we are in
+    private ArrayDeque<Label[]> loops = new ArrayDeque<>();
+
+    public StackMachine(Interpreter runtime, ProgramNode program) {
+        this.runtime = runtime;
+        // functions first, so calls to them know what to call
+        for (var function : program.getFunctions()) {
+            functions.put(function, new Function(function.getParameters()));
+        }
+        for (var function : program.getFunctions()) {
+            compile(functions.get(function).code, true, () -> {
+                for (var statement : function.getStatements()) {
+                    statement(statement);
+                }
+                emit(RETURN_EMPTY);
+            });
+        }
+        for (var blocks : List.of(program.getBeginBlocks(), program.getRestBlocks(), program.getEndBlocks())) {
+            for (var block : blocks) {
+                var compiled = new Code();
+                compile(compiled, false, () -> {
+                    var end = new Label();
+                    if (block.getCondition().isPresent()) {
+                        expression(block.getCondition().get());
+                        jump(JUMP_IF_FALSE, end);
+                    }
+                    statements(block);
+                    mark(end);
+                    emit(HALT);
+                });
+                this.blocks.put(block, compiled);
+            }
+        }
+        pool = constants.toArray();
+    }
+
+    private void compile(Code code, boolean inFunction, Runnable body) {
+        this.code = code;
+        this.inFunction = inFunction;
+        labels = new ArrayList<>();
+        body.run();
+        for (var label : labels) {
+            for (var use : label.uses) {
+                code.instructions[use] = label.position;
+            }
+        }
+    }
+
+    private void emit(int... values) {
+        for (var value : values) {
+            code.emit(value);
+        }
+    }
+
+    private int constant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private void fail(Runnable error) {
+        emit(FAIL, constant(error));
+    }
+
+    private void jump(int instruction, Label label) {
+        emit(instruction);
+        target(label);
+    }
+
+    // where to jump to, filled in once the code is compiled
+    private void target(Label label) {
+        labels.add(label);
+        label.uses.add(code.length);
+        emit(-1);
+    }
+
+    private void mark(Label label) {
+        label.position = code.length;
+    }
+
+    private void statements(BlockNode block) {
+        for (var statement : block.getStatements()) {
+            statement(statement);
+        }
+    }
+
+    private void statement(Node node) {
+        switch (node) {
+            case BreakNode br -> {
+                if (loops.isEmpty()) {
+                    fail(() -> {
+                        throw new AwkRuntimeError.ReturnInOuterBlockError(ReturnType.BREAK);
+                    });
+                } else {
+                    jump(JUMP, loops.peek()[0]);
+                }
+            }
+            case ContinueNode ct -> {
+                if (loops.isEmpty()) {
+                    fail(() -> {
+                        throw new AwkRuntimeError.ReturnInOuterBlockError(ReturnType.CONTINUE);
+                    });
+                } else {
+                    jump(JUMP, loops.peek()[1]);
+                }
+            }
+            case ReturnNode rt -> {
+                if (rt.getReturnValue().isPresent()) {
+                    expression(rt.getReturnValue().get());
+                    emit(inFunction ? RETURN : RETURN_OUTSIDE);
+                } else if (inFunction) {
+                    emit(RETURN_EMPTY);
+                } else {
+                    fail(() -> {
+                        throw new AwkRuntimeError.ReturnInOuterBlockError(ReturnType.RETURN);
+                    });
+                }
+            }
+            case DoWhileNode dw -> {
+                var start = new Label();
+                var condition = new Label();
+                var end = new Label();
+                mark(start);
+                loop(dw.getBlock(), end, condition);
+                mark(condition);
+                expression(dw.getCondition());
+                jump(JUMP_IF_TRUE, start);
+                mark(end);
+            }
+            case WhileNode wl -> {
+                var condition = new Label();
+                var end = new Label();
+                mark(condition);
+                expression(wl.getCondition());
+                jump(JUMP_IF_FALSE, end);
+                loop(wl.getBlock(), end, condition);
+                jump(JUMP, condition);
+                mark(end);
+            }
+            case ForNode fr -> {
+                var condition = new Label();
+                var increment = new Label();
+                var end = new Label();
+                if (fr.getInit().isPresent()) {
+                    expression(fr.getInit().get());
+                    emit(POP);
+                }
+                mark(condition);
+                if (fr.getCondition().isPresent()) {
+                    expression(fr.getCondition().get());
+                    jump(JUMP_IF_FALSE, end);
+                }
+                loop(fr.getBlock(), end, increment);
+                mark(increment);
+                if (fr.getIncrement().isPresent()) {
+                    expression(fr.getIncrement().get());
+                    emit(POP);
+                }
+                jump(JUMP, condition);
+                mark(end);
+            }
+            case IfNode ifs -> {
+                var otherwise = new Label();
+                var end = new Label();
+                expression(ifs.getCondition());
+                jump(JUMP_IF_FALSE, otherwise);
+                statements(ifs.getThenBlock());
+                jump(JUMP, end);
+                mark(otherwise);
+                if (ifs.getOtherwise().isPresent()) {
+                    if (ifs.getOtherwise().get() instanceof BlockNode block) {
+                        statements(block);
+                    } else {
+                        statement(ifs.getOtherwise().get());
+                    }
+                }
+                mark(end);
+            }
+            case ForEachNode fe -> {
+                if (!(fe.getIterable() instanceof VariableReferenceNode v)) {
+                    fail(() -> {
+                        throw new AwkRuntimeError.ExpectedIterableError(fe.getIterable().toString());
+                    });
+                    return;
+                }
+                var next = new Label();
+                var end = new Label();
+                var done = new Label();
+                array(v);
+                emit(KEYS);
+                mark(next);
+                emit(NEXT_KEY, constant(fe.getIndex()));
+                target(done);
+                loop(fe.getBlock(), end, next);
+                jump(JUMP, next);
+                // break jumps here with the keys still on the stack
+                mark(end);
+                mark(done);
+                emit(POP);
+            }
+            case DeleteNode dl -> {
+                if (!(dl.getArray() instanceof VariableReferenceNode v)) {
+                    fail(() -> {
+                        throw new AwkRuntimeError.ExpectedDeleteArrayError(dl.getArray().toString());
+                    });
+                    return;
+                }
+                array(v);
+                if (v.getIndex().isPresent()) {
+                    expression(v.getIndex().get());
+                    emit(CONTENTS, DELETE);
+                } else {
+                    emit(DELETE_ALL);
+                }
+            }
+            // otherwise its an expression that we only run for its side effects
+            default -> {
+                expression(node);
+                emit(POP);
+            }
+        }
+    }
+
+    private void loop(BlockNode body, Label end, Label next) {
+        loops.push(new Label[] { end, next });
+        statements(body);
+        loops.pop();
+    }
+
+    // pushes the array variable refers to
+    private void array(VariableReferenceNode variable) {
+        if (variable.isLocal()) {
+            emit(LOCAL_ARRAY, variable.getSlot(), constant(variable.getName()));
+        } else {
+            emit(GLOBAL_ARRAY, variable.getSlot());
+        }
+    }
+
+    private static boolean assignable(Node node) {
+        return node instanceof VariableReferenceNode
+                || node instanceof OperationNode op && op.getOperation() == OperationNode.Operation.DOLLAR;
+    }
+
+    // pushes the value of node
+    private void expression(Node node) {
+        switch (node) {
+            case ConstantNode c -> emit(CONSTANT, constant(c));
+            // patterns are valid anywhere in awk
+            case PatternNode p -> emit(CONSTANT, constant(new ConstantNode(p.getPattern())));
+            case VariableReferenceNode v -> {
+                if (v.getIndex().isPresent()) {
+                    expression(v.getIndex().get());
+                    emit(CONTENTS);
+                    array(v);
+                    emit(ELEMENT);
+                } else if (v.isLocal()) {
+                    emit(LOCAL, v.getSlot());
+                } else {
+                    emit(GLOBAL, v.getSlot());
+                }
+            }
+            case AssignmentNode a -> {
+                expression(a.getExpression());
+                if (!assignable(a.getTarget())) {
+                    fail(() -> {
+                        throw new AwkRuntimeError.NotAVariableError(a.getTarget());
+                    });
+                    return;
+                }
+                expression(a.getTarget());
+                emit(ASSIGN);
+            }
+            case TernaryOperationNode t -> {
+                var otherwise = new Label();
+                var end = new Label();
+                expression(t.getCond());
+                jump(JUMP_IF_FALSE, otherwise);
+                expression(t.getThen());
+                jump(JUMP, end);
+                mark(otherwise);
+                expression(t.getAlt());
+                mark(end);
+            }
+            case FunctionCallNode f -> call(f);
+            case OperationNode op -> operation(op);
+            default -> emit(CONSTANT, constant(""));
+        }
+    }
+
+    private void operation(OperationNode op) {
+        var left = op.getLeft();
+        var right = op.getRight().orElse(null);
+        switch (op.getOperation()) {
+            case DOLLAR -> {
+                expression(left);
+                emit(FIELD, constant(op));
+            }
+            case ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULO, EXPONENT, UNARYNEG, UNARYPOS -> {
+                number(op);
+                emit(VALUE);
+            }
+            case CONCATENATION -> {
+                expression(left);
+                emit(CONTENTS);
+                expression(right);
+                emit(CONCATENATE);
+            }
+            case EQ, NE, LT, LE, GT, GE -> {
+                expression(left);
+                expression(right);
+                emit(switch (op.getOperation()) {
+                    case EQ -> EQUAL;
+                    case NE -> NOT_EQUAL;
+                    case LT -> LESS;
+                    case LE -> LESS_EQUAL;
+                    case GT -> GREATER;
+                    default -> GREATER_EQUAL;
+                });
+            }
+            case AND -> {
+                var no = new Label();
+                var end = new Label();
+                expression(left);
+                jump(JUMP_IF_FALSE, no);
+                expression(right);
+                jump(JUMP_IF_FALSE, no);
+                emit(TRUE);
+                jump(JUMP, end);
+                mark(no);
+                emit(FALSE);
+                mark(end);
+            }
+            case OR -> {
+                var yes = new Label();
+                var end = new Label();
+                expression(left);
+                jump(JUMP_IF_TRUE, yes);
+                expression(right);
+                jump(JUMP_IF_TRUE, yes);
+                emit(FALSE);
+                jump(JUMP, end);
+                mark(yes);
+                emit(TRUE);
+                mark(end);
+            }
+            case NOT -> {
+                expression(left);
+                emit(NOT);
+            }
+            case MATCH, NOTMATCH -> {
+                int negate = op.getOperation() == OperationNode.Operation.NOTMATCH ? 1 : 0;
+                expression(left);
+                emit(CHARS);
+                // regex literals are already compiled
+                if (right instanceof PatternNode p && p.getCompiled().isPresent()) {
+                    emit(MATCH_LITERAL, constant(p.getCompiled().get()), negate);
+                } else {
+                    expression(right);
+                    emit(MATCH, negate);
+                }
+            }
+            case IN -> {
+                expression(left);
+                emit(CONTENTS);
+                // through error if the index is present since we do not support
+                // mutlidimensional arrays
+                if (right instanceof VariableReferenceNode v && v.getIndex().isEmpty()) {
+                    array(v);
+                    emit(IN);
+                } else {
+                    emit(NOT_AN_ARRAY);
+                }
+            }
+            case PREINC, POSTINC, PREDEC, POSTDEC -> {
+                if (!assignable(left)) {
+                    fail(() -> {
+                        throw new AwkRuntimeError.NotAVariableError(left);
+                    });
+                    return;
+                }
+                expression(left);
+                var operation = op.getOperation();
+                emit(INCREMENT,
+                        operation == OperationNode.Operation.PREINC || operation == OperationNode.Operation.POSTINC
+                                ? 1
+                                : -1,
+                        operation == OperationNode.Operation.PREINC || operation == OperationNode.Operation.PREDEC
+                                ? 1
+                                : 0);
+            }
+        }
+    }
+
+    // pushes the number node evaluates to (onto the number stack)
+    private void number(Node node) {
+        if (node instanceof ConstantNode c) {
+            var constant = c.newValue();
+            if (constant.isNumber()) {
+                emit(NUMBER_CONSTANT, constant(constant.getNumber()));
+                return;
+            }
+        }
+        if (node instanceof OperationNode op) {
+            int instruction = switch (op.getOperation()) {
+                case ADD -> ADD;
+                case SUBTRACT -> SUBTRACT;
+                case MULTIPLY -> MULTIPLY;
+                case DIVIDE -> DIVIDE;
+                case MODULO -> MODULO;
+                case EXPONENT -> EXPONENT;
+                case UNARYNEG -> NEGATE;
+                // unary pos is just used to check that a IDT is a numberish
+                case UNARYPOS -> -1;
+                default -> -2;
+            };
+            if (instruction != -2) {
+                number(op.getLeft());
+                if (op.getRight().isPresent()) {
+                    number(op.getRight().get());
+                }
+                if (instruction != -1) {
+                    emit(instruction);
+                }
+                return;
+            }
+        }
+        expression(node);
+        emit(NUMBER);
+    }
+
+    private void call(FunctionCallNode call) {
+        var name = call.getFunctionName();
+        var arguments = call.getParameters();
+        var definition = runtime.getFunction(name);
+        // functions cant be added while the program runs, so we can check now if the
+        // call would work, but the error can only happen if the call is run
+        if (definition == null) {
+            fail(() -> {
+                throw new AwkRuntimeError.FunctionNotFoundError(name);
+            });
+            return;
+        }
+        var builtin = definition instanceof BuiltInFunctionDefinitionNode b ? b : null;
+        Runnable checkArity = () -> runtime.checkArity(definition.getParameters(), arguments.size(),
+                builtin != null && builtin.getVaridiac(), name);
+        try {
+            checkArity.run();
+        } catch (AwkRuntimeError e) {
+            fail(checkArity);
+            return;
+        }
+        for (var argument : arguments) {
+            expression(argument);
+            // for builtins we do not clone so [g?]sub works
+            if (builtin == null && !Interpreter.isTemporary(argument)) {
+                emit(CLONE);
+            }
+        }
+        if (builtin != null) {
+            emit(BUILTIN, constant(builtin), arguments.size());
+        } else {
+            emit(CALL, constant(functions.get(definition)));
+        }
+    }
+
+    // the machine
+
+    private Frame.Stack frames = new Frame.Stack();
+    // values being worked on (InterpreterDataTypes, strings and keys for for in)
+    private Object[] stack = new Object[64];
+    private int top = 0;
+    private double[] numbers = new double[16];
+    private int numberTop = 0;
+    // the calls that are running, where to go back to when each returns
+    private int[][] returnCode = new int[16][];
+    private int[] returnTo = new int[16];
+    private Frame[] returnLocals = new Frame[16];
+    // where the stack of the caller ended, anything above it (like keys of for ins
+    // that are returned out of) is dropped when returning
+    private int[] returnTop = new int[16];
+    private int depth = 0;
+
+    private void push(Object value) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = value;
+    }
+
+    private Object pop() {
+        var value = stack[--top];
+        stack[top] = null;
+        return value;
+    }
+
+    private InterpreterDataType popValue() {
+        return (InterpreterDataType) pop();
+    }
+
+    private void pushNumber(double number) {
+        if (numberTop == numbers.length) {
+            numbers = Arrays.copyOf(numbers, numberTop * 2);
+        }
+        numbers[numberTop++] = number;
+    }
+
+    private static InterpreterDataType bool(boolean value) {
+        return new InterpreterDataType(value ? "1" : "0");
+    }
+
+    // same as the interpreter
+    private int compare(InterpreterDataType x, InterpreterDataType y) {
+        return runtime.compare(x, y);
+    }
+
+    public void run(BlockNode block) {
+        try {
+            execute(blocks.get(block).instructions);
+        } finally {
+            // if something was thrown (like next or exit) we have to clean up the calls
+            // that were running
+            while (depth > 0) {
+                depth--;
+                returnLocals[depth] = null;
+                frames.pop();
+            }
+            while (top > 0) {
+                pop();
+            }
+            numberTop = 0;
+        }
+    }
+
+    private void execute(int[] code) {
+        int pc = 0;
+        Frame locals = null;
+        while (true) {
+            switch (code[pc++]) {
+                case CONSTANT -> push(((ConstantNode) pool[code[pc++]]).newValue());
+                case GLOBAL -> push(runtime.getGlobal(code[pc++], InterpreterDataType::new));
+                case LOCAL -> push(locals.get(code[pc++]));
+                case GLOBAL_ARRAY -> {
+                    int slot = code[pc++];
+                    push(BytecodeRuntime.asArray(runtime.getGlobal(slot, InterpreterArrayDataType::new),
+                            runtime.getGlobalName(slot)));
+                }
+                case LOCAL_ARRAY -> {
+                    var local = locals.get(code[pc++]);
+                    push(BytecodeRuntime.asArray(local, (String) pool[code[pc++]]));
+                }
+                case ELEMENT -> {
+                    var array = (InterpreterArrayDataType) pop();
+                    push(array.get((String) pop()));
+                }
+                case FIELD -> {
+                    var node = (OperationNode) pool[code[pc++]];
+                    var field = runtime.parse(popValue());
+                    // negative index is not allowed (checked here as opposed to in Record::Get)
+                    if (field < 0) {
+                        throw new AwkRuntimeError.NegativeFieldIndexError(node, (int) field);
+                    }
+                    push(runtime.getRecord().Get((int) field));
+                }
+                case ASSIGN -> {
+                    var target = popValue();
+                    var value = popValue();
+                    target.setContents(value);
+                    push(value);
+                }
+                case CONTENTS -> push(popValue().getContents(runtime.conversionFormat));
+                case CHARS -> push(popValue().getCharSequence(runtime.conversionFormat));
+                case NUMBER -> pushNumber(runtime.parse(popValue()));
+                case NUMBER_CONSTANT -> pushNumber((Double) pool[code[pc++]]);
+                case VALUE -> push(new InterpreterDataType(numbers[--numberTop]));
+                case ADD -> {
+                    numberTop--;
+                    numbers[numberTop - 1] += numbers[numberTop];
+                }
+                case SUBTRACT -> {
+                    numberTop--;
+                    numbers[numberTop - 1] -= numbers[numberTop];
+                }
+                case MULTIPLY -> {
+                    numberTop--;
+                    numbers[numberTop - 1] *= numbers[numberTop];
+                }
+                case DIVIDE -> {
+                    numberTop--;
+                    numbers[numberTop - 1] /= numbers[numberTop];
+                }
+                case MODULO -> {
+                    numberTop--;
+                    numbers[numberTop - 1] %= numbers[numberTop];
+                }
+                case EXPONENT -> {
+                    numberTop--;
+                    numbers[numberTop - 1] = Math.pow(numbers[numberTop - 1], numbers[numberTop]);
+                }
+                case NEGATE -> numbers[numberTop - 1] = -numbers[numberTop - 1];
+                case CONCATENATE -> {
+                    var y = popValue();
+                    push(new InterpreterDataType((String) pop() + y.getContents(runtime.conversionFormat)));
+                }
+                case EQUAL, NOT_EQUAL, LESS, LESS_EQUAL, GREATER, GREATER_EQUAL -> {
+                    var y = popValue();
+                    int comparison = compare(popValue(), y);
+                    push(bool(switch (code[pc - 1]) {
+                        case EQUAL -> comparison == 0;
+                        case NOT_EQUAL -> comparison != 0;
+                        case LESS -> comparison < 0;
+                        case LESS_EQUAL -> comparison <= 0;
+                        case GREATER -> comparison > 0;
+                        default -> comparison >= 0;
+                    }));
+                }
+                case NOT -> push(bool(!Interpreter.isTruthy(popValue())));
+                case TRUE -> push(bool(true));
+                case FALSE -> push(bool(false));
+                case MATCH_LITERAL -> {
+                    var regex = (Pattern) pool[code[pc++]];
+                    push(bool(regex.matcher((CharSequence) pop()).matches() != (code[pc++] == 1)));
+                }
+                case MATCH -> {
+                    var regex = runtime.regexes.get(popValue().getContents(runtime.conversionFormat));
+                    push(bool(regex.matcher((CharSequence) pop()).matches() != (code[pc++] == 1)));
+                }
+                case IN -> {
+                    var array = (InterpreterArrayDataType) pop();
+                    push(bool(array.contains((String) pop())));
+                }
+                case INCREMENT -> {
+                    var value = popValue();
+                    var oldValue = runtime.parse(value);
+                    var newValue = oldValue + code[pc++];
+                    value.setContents(newValue);
+                    // same as the interpreter
+                    push(new InterpreterDataType(code[pc++] == 1 ? oldValue : newValue));
+                }
+                case CLONE -> push(popValue().Clone());
+                case BUILTIN -> {
+                    var builtin = (BuiltInFunctionDefinitionNode) pool[code[pc++]];
+                    var args = new InterpreterDataType[code[pc++]];
+                    for (int i = args.length - 1; i >= 0; i--) {
+                        args[i] = popValue();
+                    }
+                    push(new InterpreterDataType(builtin.getExecute().apply(
+                            runtime.bindArgs(builtin.getParameters(), Arrays.asList(args), builtin.getVaridiac()))));
+                }
+                case CALL -> {
+                    var function = (Function) pool[code[pc++]];
+                    var frame = frames.push(function.parameters);
+                    for (int i = function.parameters.size() - 1; i >= 0; i--) {
+                        frame.set(i, popValue());
+                    }
+                    if (depth == returnTo.length) {
+                        returnCode = Arrays.copyOf(returnCode, depth * 2);
+                        returnTo = Arrays.copyOf(returnTo, depth * 2);
+                        returnLocals = Arrays.copyOf(returnLocals, depth * 2);
+                        returnTop = Arrays.copyOf(returnTop, depth * 2);
+                    }
+                    returnCode[depth] = code;
+                    returnTo[depth] = pc;
+                    returnLocals[depth] = locals;
+                    returnTop[depth] = top;
+                    depth++;
+                    code = function.code.instructions;
+                    pc = 0;
+                    locals = frame;
+                }
+                case RETURN, RETURN_EMPTY -> {
+                    // functions return a copy of the value (numbers keep there precision)
+                    var value = code[pc - 1] == RETURN ? InterpreterDataType.scalarCopy(popValue())
+                            : new InterpreterDataType();
+                    depth--;
+                    frames.pop();
+                    while (top > returnTop[depth]) {
+                        pop();
+                    }
+                    code = returnCode[depth];
+                    pc = returnTo[depth];
+                    locals = returnLocals[depth];
+                    returnLocals[depth] = null;
+                    push(value);
+                }
+                case RETURN_OUTSIDE -> throw new AwkRuntimeError.ReturnInOuterBlockError(
+                        new ReturnType(InterpreterDataType.scalarCopy(popValue()), ReturnType.ReturnKind.Return));
+                case FAIL -> ((Runnable) pool[code[pc++]]).run();
+                case POP -> pop();
+                case JUMP -> pc = code[pc];
+                case JUMP_IF_FALSE -> pc = Interpreter.isTruthy(popValue()) ? pc + 1 : code[pc];
+                case JUMP_IF_TRUE -> pc = Interpreter.isTruthy(popValue()) ? code[pc] : pc + 1;
+                case KEYS -> push(new Keys(BytecodeRuntime.keys((InterpreterArrayDataType) pop())));
+                case NEXT_KEY -> {
+                    var index = (String) pool[code[pc++]];
+                    var keys = (Keys) stack[top - 1];
+                    if (keys.next == keys.keys.length) {
+                        pc = code[pc];
+                    } else {
+                        // indices are global and local in awk even if declared earlier in a local
+                        // scope so global == local == index
+                        var indexVar = runtime.getGlobal(index);
+                        if (locals != null) {
+                            locals.put(index, indexVar);
+                        }
+                        indexVar.setContents(keys.keys[keys.next++]);
+                        pc++;
+                    }
+                }
+                case DELETE -> {
+                    var key = (String) pop();
+                    ((InterpreterArrayDataType) pop()).get(key).setContents("");
+                }
+                case NOT_AN_ARRAY -> throw new AwkRuntimeError.ExpectedArrayError((String) pop(), "");
+                case DELETE_ALL -> ((InterpreterArrayDataType) pop()).clear();
+                case HALT -> {
+                    return;
+                }
+                default -> throw new IllegalStateException("unknown instruction " + code[pc - 1]);
+            }
+        }
+    }
+}
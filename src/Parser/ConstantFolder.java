@@ -0,0 +1,134 @@
+import java.util.LinkedList;
+import java.util.List;
+
+// simplifies a program once after parsing (see Awk), so work that would be the
+// same for every record isnt redone every time
+// math and concatenation on constants is done here, constants are parsed once
+// (see ConstantNode), ternaries with a constant condition become the side they
+// would pick and strings used as regexes by ~ and !~ are compiled like regex
+// literals
+// anything that would fail (like math on something that isnt a number) is left
+// as is, so the error still only happens if that code is run
+public class ConstantFolder {
+    public static ProgramNode fold(ProgramNode program) {
+        for (var function : program.getFunctions()) {
+            statements(function.getStatements());
+        }
+        for (var blocks : List.of(program.getBeginBlocks(), program.getRestBlocks(), program.getEndBlocks())) {
+            for (var block : blocks) {
+                block(block);
+            }
+        }
+        return program;
+    }
+
+    private static BlockNode block(BlockNode block) {
+        block.setCondition(block.getCondition().map(ConstantFolder::fold));
+        statements(block.getStatements());
+        return block;
+    }
+
+    private static void statements(LinkedList<StatementNode> statements) {
+        var iterator = statements.listIterator();
+        while (iterator.hasNext()) {
+            iterator.set((StatementNode) fold(iterator.next()));
+        }
+    }
+
+    // what node should be replaced with
+    private static Node fold(Node node) {
+        return switch (node) {
+            case ConstantNode c -> {
+                c.parse();
+                yield c;
+            }
+            case AssignmentNode a -> new AssignmentNode(fold(a.getTarget()), fold(a.getExpression()));
+            case BlockNode b -> block(b);
+            case DeleteNode d -> new DeleteNode(fold(d.getArray()));
+            case DoWhileNode d -> new DoWhileNode(fold(d.getCondition()), block(d.getBlock()));
+            case ForEachNode f -> new ForEachNode(f.getIndex(), fold(f.getIterable()), block(f.getBlock()));
+            case ForNode f -> new ForNode(f.getInit().map(ConstantFolder::fold),
+                    f.getCondition().map(ConstantFolder::fold), f.getIncrement().map(ConstantFolder::fold),
+                    block(f.getBlock()));
+            case FunctionCallNode f -> {
+                var iterator = f.getParameters().listIterator();
+                while (iterator.hasNext()) {
+                    iterator.set(fold(iterator.next()));
+                }
+                yield f;
+            }
+            case IfNode i -> new IfNode(fold(i.getCondition()), block(i.getThenBlock()),
+                    i.getOtherwise().map(ConstantFolder::fold));
+            case ReturnNode r -> new ReturnNode(r.getReturnValue().map(ConstantFolder::fold));
+            case TernaryOperationNode t -> {
+                var condition = fold(t.getCond());
+                var then = fold(t.getThen());
+                var alt = fold(t.getAlt());
+                if (condition instanceof ConstantNode c) {
+                    var value = c.newValue();
+                    yield value.isNumber() && value.getNumber() != 0 ? then : alt;
+                }
+                yield new TernaryOperationNode(condition, then, alt);
+            }
+            case VariableReferenceNode v -> v.getIndex().isPresent()
+                    ? new VariableReferenceNode(v.getName(), fold(v.getIndex().get()))
+                    : v;
+            case WhileNode w -> new WhileNode(fold(w.getCondition()), block(w.getBlock()));
+            case OperationNode op -> operation(op);
+            default -> node;
+        };
+    }
+
+    private static Node operation(OperationNode op) {
+        var left = fold(op.getLeft());
+        if (op.getRight().isEmpty()) {
+            if (left instanceof ConstantNode c && c.newValue().isNumber()) {
+                var number = c.newValue().getNumber();
+                Double result = switch (op.getOperation()) {
+                    case UNARYNEG -> -number;
+                    // unary pos is just used to check that a IDT is a numberish
+                    case UNARYPOS -> number;
+                    default -> null;
+                };
+                if (result != null) {
+                    return new ConstantNode(result);
+                }
+            }
+            return new OperationNode(op.getOperation(), left);
+        }
+        var right = fold(op.getRight().get());
+        var operation = op.getOperation();
+        if ((operation == OperationNode.Operation.MATCH || operation == OperationNode.Operation.NOTMATCH)
+                && right instanceof ConstantNode c && !c.isFromNumber()) {
+            return new OperationNode(operation, left, new PatternNode(c.getValue()));
+        }
+        if (left instanceof ConstantNode x && right instanceof ConstantNode y) {
+            var xValue = x.newValue();
+            var yValue = y.newValue();
+            // numbers from math are turned into strings with CONVFMT, which could be
+            // different when the program runs
+            if (operation == OperationNode.Operation.CONCATENATION && !x.isFromNumber() && !y.isFromNumber()) {
+                var folded = new ConstantNode(xValue.getContents() + yValue.getContents());
+                folded.parse();
+                return folded;
+            }
+            if (xValue.isNumber() && yValue.isNumber()) {
+                double a = xValue.getNumber();
+                double b = yValue.getNumber();
+                Double result = switch (operation) {
+                    case ADD -> a + b;
+                    case SUBTRACT -> a - b;
+                    case MULTIPLY -> a * b;
+                    case DIVIDE -> a / b;
+                    case MODULO -> a % b;
+                    case EXPONENT -> Math.pow(a, b);
+                    default -> null;
+                };
+                if (result != null) {
+                    return new ConstantNode(result);
+                }
+            }
+        }
+        return new OperationNode(operation, left, right);
+    }
+}
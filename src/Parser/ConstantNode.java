@@ -1,14 +1,52 @@
 public class ConstantNode extends StatementNode {
     private String value;
+    // the value already parsed (see ConstantFolder), using the constant copies this
+    // instead of parsing the string again every time
+    private InterpreterDataType parsed = null;
+    // whether this is a number in the source or the result of math on constants
+    // (see ConstantFolder), these act like the number and not a string
+    private boolean fromNumber = false;
 
     public String getValue() {
         return value;
     }
 
+    public boolean isFromNumber() {
+        return fromNumber;
+    }
+
     public ConstantNode(String value) {
         this.value = value;
     }
 
+    public ConstantNode(double value) {
+        parsed = new InterpreterDataType(value);
+        this.value = parsed.getContents();
+        fromNumber = true;
+    }
+
+    // a number in the source, its a number (not a string) so printing it goes
+    // through OFMT and making it a string goes through CONVFMT, but it keeps how it
+    // was written for printing the ast
+    public static ConstantNode number(String literal) {
+        var constant = new ConstantNode(literal);
+        constant.parsed = new InterpreterDataType(NumberParser.parse(literal));
+        constant.fromNumber = true;
+        return constant;
+    }
+
+    public void parse() {
+        if (parsed == null) {
+            parsed = new InterpreterDataType(value);
+            parsed.isNumber();
+        }
+    }
+
+    // a new value every time, as builtins like sub can change what there given
+    public InterpreterDataType newValue() {
+        return parsed == null ? new InterpreterDataType(value) : parsed.Clone();
+    }
+
     @Override
     public String toString() {
         return value;
@@ -0,0 +1,82 @@
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// used for looking through a whole program (or part of one) without each
+// analysis having to know how to get to the children of every kind of node
+public class NodeWalker {
+    // the nodes directly under node
+    public static List<Node> children(Node node) {
+        var children = new LinkedList<Node>();
+        switch (node) {
+            case AssignmentNode a -> {
+                children.add(a.getTarget());
+                children.add(a.getExpression());
+            }
+            case BlockNode b -> {
+                b.getCondition().ifPresent(children::add);
+                children.addAll(b.getStatements());
+            }
+            case DeleteNode d -> children.add(d.getArray());
+            case DoWhileNode d -> {
+                children.add(d.getBlock());
+                children.add(d.getCondition());
+            }
+            case ForEachNode f -> {
+                children.add(f.getIterable());
+                children.add(f.getBlock());
+            }
+            case ForNode f -> {
+                f.getInit().ifPresent(children::add);
+                f.getCondition().ifPresent(children::add);
+                f.getIncrement().ifPresent(children::add);
+                children.add(f.getBlock());
+            }
+            case FunctionCallNode f -> children.addAll(f.getParameters());
+            case IfNode i -> {
+                children.add(i.getCondition());
+                children.add(i.getThenBlock());
+                i.getOtherwise().ifPresent(children::add);
+            }
+            case OperationNode o -> {
+                children.add(o.getLeft());
+                o.getRight().ifPresent(children::add);
+            }
+            case ReturnNode r -> r.getReturnValue().ifPresent(children::add);
+            case TernaryOperationNode t -> {
+                children.add(t.getCond());
+                children.add(t.getThen());
+                children.add(t.getAlt());
+            }
+            case VariableReferenceNode v -> v.getIndex().ifPresent(children::add);
+            case WhileNode w -> {
+                children.add(w.getCondition());
+                children.add(w.getBlock());
+            }
+            case FunctionNode f -> {
+                // builtins dont have any statements
+                if (f.getStatements() != null) {
+                    children.addAll(f.getStatements());
+                }
+            }
+            case ProgramNode p -> {
+                children.addAll(p.getFunctions());
+                children.addAll(p.getBeginBlocks());
+                children.addAll(p.getRestBlocks());
+                children.addAll(p.getEndBlocks());
+            }
+            // constants, patterns, break and continue dont have anything under them
+            default -> {
+            }
+        }
+        return children;
+    }
+
+    // calls visitor on node and everything under it (parents before children)
+    public static void walk(Node node, Consumer<Node> visitor) {
+        visitor.accept(node);
+        for (var child : children(node)) {
+            walk(child, visitor);
+        }
+    }
+}
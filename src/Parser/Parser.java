@@ -352,7 +352,7 @@ public class Parser {
         }
         Optional<Token> number = MatchAndRemove(Token.TokenType.NUMBER);
         if (number.isPresent()) {
-            return Optional.of(new ConstantNode(getValue.apply(number)));
+            return Optional.of(ConstantNode.number(getValue.apply(number)));
         }
         Optional<Token> pattern = MatchAndRemove(Token.TokenType.PATTERN);
         if (pattern.isPresent()) {
@@ -1,12 +1,28 @@
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 public class PatternNode extends StatementNode {
     private String pattern;
+    // regex literals never change so we compile them once here instead of every
+    // time they are used
+    // empty if the pattern isnt a valid regex, so the error happens when its used
+    private Optional<Pattern> compiled;
 
     public String getPattern() {
         return pattern;
     }
 
+    public Optional<Pattern> getCompiled() {
+        return compiled;
+    }
+
     public PatternNode(String pattern) {
         this.pattern = pattern;
+        try {
+            compiled = Optional.of(Pattern.compile(pattern));
+        } catch (PatternSyntaxException e) {
+            compiled = Optional.empty();
+        }
     }
 
     @Override
@@ -1,6 +1,10 @@
 public class VariableReferenceNode extends StatementNode {
     private String name;
     private Optional<Node> index = Optional.empty();
+    // where the variable lives, filled in by VariableResolver after parsing
+    // -1 means it hasnt been resolved so it has to be looked up by name
+    private int slot = -1;
+    private boolean local = false;
 
     public VariableReferenceNode(String name) {
         this.name = name;
@@ -20,6 +24,20 @@ public class VariableReferenceNode extends StatementNode {
         return name;
     }
 
+    public void resolve(int slot, boolean local) {
+        this.slot = slot;
+        this.local = local;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    // whether slot is the index of a function parameter or a global
+    public boolean isLocal() {
+        return local;
+    }
+
     @Override
     public String toString() {
         return index.isPresent() ? name + "[" + index.get() + "]" : name;
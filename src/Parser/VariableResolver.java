@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// works out where every variable in a program lives once after parsing, so the
+// interpreter doesnt have to look them up by name every time they are used
+// inside a function its parameters are locals (the slot is the index of the
+// parameter), everything else is a global (the slot is an index into the globals)
+public class VariableResolver {
+    private HashMap<String, Integer> globals = new HashMap<>();
+    private List<String> globalNames = new ArrayList<>();
+
+    // resolves every variable reference in program and gives back the name of each
+    // global by its slot
+    public static List<String> resolve(ProgramNode program) {
+        var resolver = new VariableResolver();
+        for (var function : program.getFunctions()) {
+            var parameters = function.getParameters();
+            for (var statement : function.getStatements()) {
+                resolver.resolve(statement, parameters);
+            }
+        }
+        for (var blocks : List.of(program.getBeginBlocks(), program.getRestBlocks(), program.getEndBlocks())) {
+            for (var block : blocks) {
+                resolver.resolve(block, List.of());
+            }
+        }
+        return resolver.globalNames;
+    }
+
+    private void resolve(Node node, List<String> parameters) {
+        NodeWalker.walk(node, n -> {
+            if (n instanceof VariableReferenceNode variable) {
+                int parameter = parameters.indexOf(variable.getName());
+                if (parameter != -1) {
+                    variable.resolve(parameter, true);
+                } else {
+                    variable.resolve(global(variable.getName()), false);
+                }
+            }
+        });
+    }
+
+    private int global(String name) {
+        return globals.computeIfAbsent(name, u -> {
+            globalNames.add(name);
+            return globalNames.size() - 1;
+        });
+    }
+}
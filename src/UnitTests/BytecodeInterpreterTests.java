@@ -0,0 +1,50 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+// runs all the interpreter tests again with the bytecode engine
+// (GetIDT always uses the closure compiler, so only the tests that run whole
+// programs end up running bytecode)
+public class BytecodeInterpreterTests extends InterpreterTests {
+    @Override
+    protected Interpreter interpreter(ProgramNode program) {
+        var interpreter = super.interpreter(program);
+        interpreter.setEngine(Interpreter.Engine.Bytecode);
+        return interpreter;
+    }
+
+    private String run(ProgramNode program) {
+        var written = new StringWriter();
+        var interpreter = interpreter(program);
+        interpreter.setOutput(new Output(written, false));
+        interpreter.InterpretProgram();
+        return written.toString();
+    }
+
+    @Test
+    public void testBytecode() throws Exception {
+        var program = new Parser(new Lexer("""
+                function fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2) }
+                function fill(a, n,   i) { for (i = 0; i < n; i++) { if (i == 3) continue; a[i] = i * i }; return n }
+                BEGIN {
+                    for (i = 0; i < 10; i++) s += i % 3 ^ 2
+                    arr[0] = 0; fill(arr, 5, 0)
+                    for (k in arr) { if (arr[k] > 8) break; t += arr[k] }
+                    x = "abc"
+                    print s, fib(15), t, 2 in arr, 3 in arr, x ~ `a.c`, x !~ `b`, x "d", -s, (s > 9 && !0) ? "y" : "n"
+                }""").lex()).Parse();
+        assertEquals("36 610 5 1 0 1 1 abcd -36 y\n", run(program));
+    }
+
+    @Test
+    public void testBytecodeFallback() throws Exception {
+        // break outside of a loop cant be compiled, so that block is left to the
+        // closure compiler, but the other block still runs as bytecode
+        var program = new Parser(new Lexer("BEGIN { a = 1 }\nBEGIN { if (a) break }").lex()).Parse();
+        var interpreter = interpreter(program);
+        assertEquals(true, interpreter.isBytecodeCompiled(program.getBeginBlocks().get(0)));
+        assertEquals(false, interpreter.isBytecodeCompiled(program.getBeginBlocks().get(1)));
+    }
+}
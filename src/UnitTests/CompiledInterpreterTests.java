@@ -0,0 +1,9 @@
+// runs all the interpreter tests again with the closure compiling engine
+public class CompiledInterpreterTests extends InterpreterTests {
+    @Override
+    protected Interpreter interpreter(ProgramNode program) {
+        var interpreter = super.interpreter(program);
+        interpreter.setEngine(Interpreter.Engine.Compile);
+        return interpreter;
+    }
+}
@@ -0,0 +1,58 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class FieldSplitterTests {
+    public void assertSplits(String separator, String record, String... expected) {
+        assertArrayEquals(expected, new FieldSplitter(separator).split(record));
+    }
+
+    @Test
+    public void Whitespace() {
+        assertSplits(" ", "  foo\tbar  \n baz ", "foo", "bar", "baz");
+        assertSplits(" ", "   ");
+        assertSplits(" ", "");
+    }
+
+    @Test
+    public void SingleCharacter() {
+        assertSplits(",", "a,,b,", "a", "", "b", "");
+        // single characters are not regexes
+        assertSplits("|", "a|b", "a", "b");
+        assertSplits(".", "1.2", "1", "2");
+        assertSplits(",", "");
+    }
+
+    @Test
+    public void EachCharacter() {
+        assertSplits("", "abc", "a", "b", "c");
+    }
+
+    @Test
+    public void Regex() {
+        assertSplits("[0-9]+", "a12b3c", "a", "b", "c");
+        assertSplits(", *", ",a,  b", "", "a", "b");
+        // empty matches dont separate anything
+        assertSplits("x*", "abc", "abc");
+    }
+
+    @Test
+    public void ReusedForSameSeparator() {
+        var splitter = new FieldSplitter("[,;]");
+        assertSame(splitter, FieldSplitter.forSeparator(splitter, "[,;]"));
+        assertArrayEquals(new String[] { "a", "b" }, FieldSplitter.forSeparator(splitter, ";").split("a;b"));
+    }
+
+    @Test
+    public void Limit() {
+        var bounds = new FieldSplitter.Bounds();
+        // we stop once we found limit fields
+        assertEquals(2, new FieldSplitter(" ").split("a b c d", bounds, 2));
+        assertEquals(3, bounds.end(1));
+        assertEquals(1, new FieldSplitter(",").split("a,b,c", bounds, 1));
+        assertEquals(0, new FieldSplitter(",").split("a,b,c", bounds, 0));
+        assertEquals(3, new FieldSplitter(", *").split("a, b,c", bounds, 5));
+    }
+}
@@ -3,8 +3,11 @@ import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.function.Consumer;
 
 import org.junit.Test;
@@ -13,15 +16,20 @@ public class InterpreterTests {
     // built in functions that dont print to console (everything besides print,
     // printf)
 
-    private Interpreter emptyInterpreter() {
+    // overridden to run all these tests with a different engine
+    protected Interpreter interpreter(ProgramNode program) {
         try {
-            return new Interpreter(new ProgramNode(), Optional.empty());
+            return new Interpreter(program, Optional.empty());
         } catch (IOException e) {
             // wont happen
             throw new RuntimeException();
         }
     }
 
+    private Interpreter emptyInterpreter() {
+        return interpreter(new ProgramNode());
+    }
+
     public void testBuiltIn(String name, Consumer<Interpreter> setUp, HashMap<String, InterpreterDataType> args,
             String expected,
             Consumer<Interpreter> tester) {
@@ -572,7 +580,9 @@ public class InterpreterTests {
         ((BuiltInFunctionDefinitionNode) interpreter.getFunction("getline")).getExecute().apply(new HashMap<>());
         assertEquals("", interpreter.GetIDT(field37, null).getContents());
         ((BuiltInFunctionDefinitionNode) interpreter.getFunction("getline")).getExecute().apply(new HashMap<>());
-        assertEquals("11", interpreter.GetIDT(field37, null).getContents());
+        // the default FS splits on runs of whitespace, so the double spaces dont make
+        // empty fields
+        assertEquals("14", interpreter.GetIDT(field37, null).getContents());
         interpreter.setInput("");
         ((BuiltInFunctionDefinitionNode) interpreter.getFunction("getline")).getExecute().apply(new HashMap<>());
     }
@@ -638,7 +648,8 @@ public class InterpreterTests {
         parser.AcceptSeperators();
         assertEquals(new OperationNode(OperationNode.Operation.DIVIDE, new ConstantNode("4"), new ConstantNode("1.35")),
                 division);
-        assertEquals("2.9629629", interpreter.GetIDT(division, null).getContents());
+        // numbers are converted to strings with CONVFMT (%.6g)
+        assertEquals("2.96296", interpreter.GetIDT(division, null).getContents());
     }
 
     // interpreter 2 - tests - GetIDT - equal
@@ -1179,7 +1190,7 @@ public class InterpreterTests {
                                         new ConstantNode("6"))),
                         new ConstantNode("7"))),
                 complexMath);
-        assertEquals("6.999744", interpreter.GetIDT(complexMath, null).getContents());
+        assertEquals("6.99974", interpreter.GetIDT(complexMath, null).getContents());
     }
 
     // interpreter 2 - tests - GetIDT - complex variables
@@ -1437,4 +1448,328 @@ public class InterpreterTests {
                 invalidIndex);
         assertThrows(AwkRuntimeError.ExpectedArrayError.class, () -> interpreter.GetIDT(invalidIndex, null));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNumbersAndStrings() {
+        // numbers only become strings when asked for
+        var number = new InterpreterDataType(2.5f);
+        assertEquals(true, number.isNumber());
+        assertEquals(2.5f, number.getNumber(), 0);
+        assertEquals("2.5", number.getContents());
+        number.setContents(3f);
+        assertEquals("3", number.getContents());
+        // strings that look like numbers can be used as numbers
+        var string = new InterpreterDataType(" 4 ");
+        assertEquals(true, string.isNumber());
+        assertEquals(4f, string.getNumber(), 0);
+        assertEquals(" 4 ", string.getContents());
+        assertEquals(true, new InterpreterDataType("").isNumber());
+        assertEquals(false, new InterpreterDataType("4x").isNumber());
+        // a clone keeps both
+        assertEquals(true, number.Clone().isNumber());
+        assertEquals("3", number.Clone().getContents());
+    }
+
+    @Test
+    public void testNumberFormatting() {
+        // integers are always printed in full
+        assertEquals("16777217", new InterpreterDataType(16777217d).getContents());
+        assertEquals("-3", new InterpreterDataType(-3d).getContents());
+        // everything else goes through CONVFMT (%.6g) when made into a string
+        assertEquals("0.333333", new InterpreterDataType(1 / 3d).getContents());
+        assertEquals("1e+20", NumberFormatter.toString(1.000001e20 + 0.5, "%.1g"));
+        assertEquals("0.5", NumberFormatter.toString(0.5, "%.6g"));
+        // only integers a long holds exactly are printed as integers
+        assertEquals("9223372036854774784", NumberFormatter.toString(0x1p63 - 1024, "%.6g"));
+        assertEquals("9.22337e+18", NumberFormatter.toString(0x1p63, "%.6g"));
+        assertEquals("-9.22337e+18", NumberFormatter.toString(-0x1p63, "%.6g"));
+        assertEquals("1e+30", NumberFormatter.toString(1e30, "%.6g"));
+        // and OFMT when printed
+        assertEquals("0.33", new InterpreterDataType(1 / 3d).getOutputContents("%.2f"));
+        // strings are left alone
+        assertEquals("0.50", new InterpreterDataType("0.50").getOutputContents("%.6g"));
+    }
+
+    @Test
+    public void testFastNumberFormatting() {
+        // numbers are rounded like c does (the exact value of the double, ties to
+        // even), these are what c printf gives
+        var expected = new String[][] {
+                { "%.6g", "0.1", "1e-05", "0.00015", "123456", "1.23457e+06", "10", "0.0001", "3.33333e+99",
+                        "-2.5e-300", "0.15", "2.5", "99999.9", "0.125", "-0.4", "2.675" },
+                { "%.1g", "0.1", "1e-05", "0.0001", "1e+05", "1e+06", "1e+01", "0.0001", "3e+99", "-2e-300", "0.1",
+                        "2", "1e+05", "0.1", "-0.4", "3" },
+                { "%.0g", "0.1", "1e-05", "0.0001", "1e+05", "1e+06", "1e+01", "0.0001", "3e+99", "-2e-300", "0.1",
+                        "2", "1e+05", "0.1", "-0.4", "3" },
+                { "%.3G", "0.1", "1E-05", "0.00015", "1.23E+05", "1.23E+06", "10", "0.0001", "3.33E+99", "-2.5E-300",
+                        "0.15", "2.5", "1E+05", "0.125", "-0.4", "2.67" },
+                { "%.16g", "0.1", "1e-05", "0.00015", "123456.5", "1234567.5", "9.999999499999999", "9.9999995e-05",
+                        "3.333333333333333e+99", "-2.5e-300", "0.15", "2.5", "99999.95", "0.125", "-0.4", "2.675" },
+                { "%.17g", "0.10000000000000001", "1.0000000000000001e-05", "0.00014999999999999999", "123456.5",
+                        "1234567.5", "9.9999994999999995", "9.9999994999999998e-05", "3.3333333333333332e+99",
+                        "-2.5e-300", "0.14999999999999999", "2.5", "99999.949999999997", "0.125",
+                        "-0.40000000000000002", "2.6749999999999998" },
+                { "%.2f", "0.10", "0.00", "0.00", "123456.50", "1234567.50", "10.00", "0.00", null, "-0.00", "0.15",
+                        "2.50", "99999.95", "0.12", "-0.40", "2.67" },
+                { "%.0f", "0", "0", "0", "123456", "1234568", "10", "0", null, "-0", "0", "2", "100000", "0", "-0",
+                        "3" },
+                { "%.3e", "1.000e-01", "1.000e-05", "1.500e-04", "1.235e+05", "1.235e+06", "1.000e+01", "1.000e-04",
+                        "3.333e+99", "-2.500e-300", "1.500e-01", "2.500e+00", "1.000e+05", "1.250e-01", "-4.000e-01",
+                        "2.675e+00" } };
+        var numbers = new double[] { 0.1, 1e-5, 1.5e-4, 123456.5, 1234567.5, 9.9999995, 0.000099999995, 1e100 / 3,
+                -2.5e-300, 0.15, 2.5, 99999.95, 0.125, -0.4, 2.675 };
+        for (var row : expected) {
+            for (int i = 0; i < numbers.length; i++) {
+                if (row[i + 1] != null) {
+                    assertEquals(row[0] + " " + numbers[i], row[i + 1], NumberFormatter.toString(numbers[i], row[0]));
+                }
+            }
+        }
+        assertEquals("123456", NumberFormatter.toString(1234565 / 10d, "%.6g"));
+        assertEquals("0", NumberFormatter.toString(0.5, "%.0f"));
+        // %.Ng is done without String.format, it has to round the same way
+        var formats = new String[] { "%.6g", "%g", "%.1g", "%.3G", "%.10g", "%.15g", "%.16g" };
+        var random = new ArrayList<Double>();
+        for (int i = 0; i < 10000; i++) {
+            random.add(UnitTests.rng.nextDouble() * Math.pow(10, UnitTests.rng.nextInt(40) - 20));
+            random.add((UnitTests.rng.nextInt(2000000) - 1000000) / 1000d);
+            // lots of these are exactly halfway at the 6th digit
+            random.add(UnitTests.rng.nextInt(1000000) / 1000d * 1.5);
+        }
+        for (var format : formats) {
+            for (var number : random) {
+                var slow = NumberFormatter.isInteger(number) ? Long.toString((long) (double) number)
+                        : NumberFormatter.format(format, number);
+                assertEquals(format + " " + number, slow, NumberFormatter.toString(number, format));
+            }
+        }
+        // print writes numbers straight into the output
+        var written = new StringWriter();
+        var output = new Output(written, false);
+        new InterpreterDataType(1 / 3d).print(output, "%.6g");
+        new InterpreterDataType(" 1.50").print(output, "%.6g");
+        new InterpreterDataType(2.5e-7).print(output, "%.2f");
+        output.flush();
+        assertEquals("0.333333 1.500.00", written.toString());
+    }
+
+    @Test
+    public void testRegexCache() {
+        var cache = new RegexCache(2);
+        var a = cache.get("a+");
+        assertEquals(true, a == cache.get("a+"));
+        cache.get("b+");
+        // a+ was used more recently than b+ so b+ is the one thats dropped
+        cache.get("a+");
+        cache.get("c+");
+        assertEquals(2, cache.size());
+        assertEquals(true, a == cache.get("a+"));
+        // regex literals are compiled when parsed
+        assertEquals(true, new PatternNode("x[0-9]").getCompiled().get().matcher("x1").matches());
+        assertEquals(false, new PatternNode("x[").getCompiled().isPresent());
+    }
+
+    @Test
+    public void testPrintBuffered() throws Exception {
+        var written = new StringWriter();
+        var program = new Parser(new Lexer(
+                "BEGIN { OFS = \"-\"; ORS = \";\"; print 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11; printf \"%s!\", \"a\" }")
+                .lex()).Parse();
+        var interpreter = interpreter(program);
+        interpreter.setOutput(new Output(written, false));
+        interpreter.InterpretProgram();
+        // everything gets written out once the program is done
+        assertEquals("1-2-3-4-5-6-7-8-9-10-11;a!", written.toString());
+    }
+
+    @Test
+    public void testVariableResolver() throws Exception {
+        var program = new Parser(new Lexer("function f(a, b) { return a + b + c }\nBEGIN { c = 1; d = f(c, 2) }")
+                .lex()).Parse();
+        assertEquals(List.of("c", "d"), VariableResolver.resolve(program));
+        var variables = new LinkedList<VariableReferenceNode>();
+        NodeWalker.walk(program, n -> {
+            if (n instanceof VariableReferenceNode v) {
+                variables.add(v);
+            }
+        });
+        // a and b are the parameters of f, c is global everywhere
+        assertEquals("a", variables.get(0).getName());
+        assertEquals(true, variables.get(0).isLocal());
+        assertEquals(1, variables.get(1).getSlot());
+        assertEquals(false, variables.get(2).isLocal());
+        assertEquals(0, variables.get(2).getSlot());
+        var interpreter = interpreter(program);
+        interpreter.InterpretProgram();
+        assertEquals("4", interpreter.getGlobal("d").getContents());
+    }
+
+    @Test
+    public void testConstantFolder() throws Exception {
+        var program = ConstantFolder.fold(new Parser(new Lexer("""
+                BEGIN { CONVFMT = "%.2g"; a = 60 * 60 * 24; b = "x" "y"; c = 0 ? 1 : -2; d = (1 / 3) ""
+                    e = "b" ~ "[ab]"; f = "q" + 1 }""").lex()).Parse());
+        var statements = program.getBeginBlocks().get(0).getStatements();
+        assertEquals(new ConstantNode("86400"), ((AssignmentNode) statements.get(1)).getExpression());
+        assertEquals(new ConstantNode("xy"), ((AssignmentNode) statements.get(2)).getExpression());
+        assertEquals(new ConstantNode("-2"), ((AssignmentNode) statements.get(3)).getExpression());
+        // numbers from math only become strings (with CONVFMT) when the program runs,
+        // and math that would fail is left for when its run
+        assertEquals(OperationNode.class, ((AssignmentNode) statements.get(4)).getExpression().getClass());
+        assertEquals(OperationNode.class, ((AssignmentNode) statements.get(6)).getExpression().getClass());
+        var match = (OperationNode) ((AssignmentNode) statements.get(5)).getExpression();
+        assertEquals(new PatternNode("[ab]"), match.getRight().get());
+        var interpreter = interpreter(program);
+        assertThrows(AwkRuntimeError.ExpectedNumberError.class, () -> interpreter.InterpretProgram());
+        assertEquals("86400", interpreter.getGlobal("a").getContents());
+        assertEquals("0.33", interpreter.getGlobal("d").getContents());
+        assertEquals("1", interpreter.getGlobal("e").getContents());
+    }
+
+    @Test
+    public void testConversionFormatPerInterpreter() throws Exception {
+        var first = interpreter(new Parser(new Lexer("BEGIN { CONVFMT = \"%.2g\"; x = 1 / 3 }").lex()).Parse());
+        first.InterpretProgram();
+        // making and running another interpreter doesnt change (or use) the first ones
+        // CONVFMT
+        var second = interpreter(new Parser(new Lexer("BEGIN { y = (1 / 3) \"\" }").lex()).Parse());
+        second.InterpretProgram();
+        assertEquals("0.333333", second.getGlobal("y").getContents());
+        assertEquals("0.33", first.getGlobal("x").getContents(first.conversionFormat));
+    }
+
+    @Test
+    public void testNumberLiterals() throws Exception {
+        var program = new Parser(new Lexer("""
+                BEGIN { CONVFMT = "%.2f"; x = 3.14159 ""; y = 3.14159; z = 1.50 }""").lex()).Parse();
+        var interpreter = interpreter(program);
+        interpreter.InterpretProgram();
+        // numbers in the source are numbers, so they go through CONVFMT and OFMT
+        assertEquals("3.14", interpreter.getGlobal("x").getContents());
+        assertEquals("3.142", interpreter.getGlobal("y").getOutputContents("%.3f"));
+        assertEquals("1.5", interpreter.getGlobal("z").getOutputContents("%.6g"));
+    }
+
+    @Test
+    public void testReturnPrecision() throws Exception {
+        var program = new Parser(new Lexer("""
+                function r() { return 2 ^ 0.5 }
+                function avg(a, b) { return (a + b) / 2 }
+                BEGIN { x = r() * r(); y = avg(10, 3) * 3; z = avg(1, 0) * 3 }""").lex()).Parse();
+        var interpreter = interpreter(program);
+        interpreter.InterpretProgram();
+        // return values arent made into strings (with CONVFMT) so math on them is
+        // exact
+        assertEquals("2", interpreter.getGlobal("x").getContents());
+        assertEquals("19.5", interpreter.getGlobal("y").getContents());
+        assertEquals("1.5", interpreter.getGlobal("z").getContents());
+    }
+
+    @Test
+    public void testFunctionFrames() throws Exception {
+        var program = new Parser(new Lexer("""
+                function fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2) }
+                function bump(a) { a = a + 1; return a }
+                function keys(a, k,   s) { for (k in a) s = s k; return s }
+                BEGIN { x = 1; y = bump(x); z = bump(x + 1); f = fib(fib(7)); arr["q"]; w = keys(arr, 0, "") }""")
+                .lex()).Parse();
+        var interpreter = interpreter(program);
+        interpreter.InterpretProgram();
+        // variables passed to a function are copied, so x doesnt change
+        assertEquals("1", interpreter.getGlobal("x").getContents());
+        assertEquals("2", interpreter.getGlobal("y").getContents());
+        assertEquals("3", interpreter.getGlobal("z").getContents());
+        assertEquals("233", interpreter.getGlobal("f").getContents());
+        assertEquals("q", interpreter.getGlobal("w").getContents());
+    }
+
+    @Test
+    public void testParallelAnalysis() throws Exception {
+        var independent = List.of("{ print $2, $1 }", "`x` { $1 = toupper($1); print }", "{ print NR \":\" $0; next }",
+                "BEGIN { m[\"a\"] = 1 } { print m[$1] } END { print NR, $0 }",
+                "function f(a) { a = a 1; return a } { sub(`a`, \"b\"); print f($1) }",
+                "BEGIN { s[1] } $1 in s { print }");
+        var dependent = List.of("{ n++ }", "{ x = $1 } END { print x }", "{ getline; print }",
+                "{ print m[$1] } END { for (k in m) print k }", "{ $1 = 2 } END { print $1 }", "{ match($0, `a`) }",
+                "{ split($0, parts) }", "{ exit }",
+                "function f(a) { a[1] = 2 } { f(arr) }", "function f() { total += $1 } { f() }", "{ undefined() }");
+        for (var source : independent) {
+            var program = new Parser(new Lexer(source).lex()).Parse();
+            assertEquals(source, true, ParallelAnalysis.isRecordIndependent(program));
+        }
+        for (var source : dependent) {
+            var program = new Parser(new Lexer(source).lex()).Parse();
+            assertEquals(source, false, ParallelAnalysis.isRecordIndependent(program));
+        }
+    }
+
+    @Test
+    public void testParallelRunner() throws Exception {
+        var input = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append("r").append(i).append(' ').append(i % 7).append('\n');
+        }
+        var source = """
+                BEGIN { names[0] = "zero" }
+                function label(n) { return n in names ? names[n] : "n" n }
+                $2 > 4 { $2 = label($2); print NR, $0; next }
+                $2 == 0 { printf "%s %s|", FNR, label($2) }
+                END { print NR, $0 }""";
+        assertEquals(runParallel(source, input.toString(), 1), runParallel(source, input.toString(), 3));
+        // when a record fails everything printed for the records before it is still
+        // written
+        var written = new StringWriter();
+        assertThrows(AwkRuntimeError.ExpectedNumberError.class,
+                () -> runParallel("{ print $1 + 0 }", "1\n".repeat(9000) + "x\n2\n", 4, written));
+        assertEquals("1\n".repeat(9000), written.toString());
+    }
+
+    @Test
+    public void testAccumulators() throws Exception {
+        var accumulated = List.of("{ n++ } END { print n }", "{ s[$1] += $2; c[$1]++ } END { for (k in s) print k }",
+                "{ if ($2 > m[$1]) m[$1] = $2; if (low >= $2) low = $2 } END { print low }",
+                "{ left -= $2; --n; t = $2 + t } END { print left, n, t }");
+        var dependent = List.of("{ n++; print n }", "{ s[$1] += $2 } END { print length(s) } { print s[$1] }",
+                "function f() { return n } { n++; print f() }", "{ if ($2 > m) m = $2; else m = 0 }",
+                "{ if ($2 > m) m = $3 }", "{ NR++ }", "{ n++; n[$1]++ }");
+        for (var source : accumulated) {
+            var program = new Parser(new Lexer(source).lex()).Parse();
+            assertEquals(source, false, ParallelAnalysis.isRecordIndependent(program));
+            assertEquals(source, true, ParallelAnalysis.isRecordIndependent(Accumulators.find(program).getProgram()));
+        }
+        for (var source : dependent) {
+            var program = new Parser(new Lexer(source).lex()).Parse();
+            assertEquals(source, false, ParallelAnalysis.isRecordIndependent(Accumulators.find(program).getProgram()));
+        }
+        var input = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append("k").append(i % 13).append(' ').append(i % 97 / 10.0).append(" w").append(i % 5).append('\n');
+        }
+        var source = """
+                BEGIN { n = 5 }
+                { s[$1] += $2; c[$1]++; n--; if ($3 >= top[$1]) top[$1] = $3; if ($2 < low) low = $2 }
+                END { for (k in s) print k, s[k], c[k], top[k]; print n, low }""";
+        assertEquals(runParallel(source, input.toString(), 1), runParallel(source, input.toString(), 3));
+        // adding something that isnt a number fails at the same record
+        var written = new StringWriter();
+        assertThrows(AwkRuntimeError.ExpectedNumberError.class, () -> runParallel(
+                "{ s += $1; print $1 } END { print s }", "1\n".repeat(9000) + "x\n2\n", 4, written));
+        assertEquals("1\n".repeat(9000), written.toString());
+    }
+
+    // runs source on input with its main rules on threads threads (if it can be),
+    // writing what it prints to written
+    private void runParallel(String source, String input, int threads, StringWriter written) throws Exception {
+        var interpreter = interpreter(new Parser(new Lexer(source).lex()).Parse());
+        interpreter.setInput(input);
+        interpreter.setOutput(new Output(written, false));
+        interpreter.setParallelism(threads);
+        interpreter.InterpretProgram();
+    }
+
+    private String runParallel(String source, String input, int threads) throws Exception {
+        var written = new StringWriter();
+        runParallel(source, input, threads, written);
+        return written.toString();
+    }
+}
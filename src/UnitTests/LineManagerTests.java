@@ -1,7 +1,18 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -87,4 +98,308 @@ public class LineManagerTests {
         assertEquals(in.getRecord().Get(4).getContents(), "4");
         assertEquals(in.getRecord().Get(5).getContents(), "n");
     }
+
+    @Test
+    public void ReadsLazily() throws Exception {
+        var in = new Interpreter(new ProgramNode(), Optional.empty());
+        // a reader that only ever has one line available, and fails if we try to read
+        // past it, so we know getline doesnt read the whole input up front
+        in.setInput(new Reader() {
+            private boolean read = false;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (read) {
+                    throw new IOException("read past first line");
+                }
+                read = true;
+                var text = "first line\nsecond";
+                text.getChars(0, text.length(), cbuf, off);
+                return text.length();
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        assertEquals(callGetLine(in), true);
+        assertEquals(in.getRecord().Get(0).getContents(), "first line");
+        assertThrows(AwkRuntimeError.InputError.class, () -> callGetLine(in));
+    }
+
+    @Test
+    public void FlushesBeforeWaiting() throws Exception {
+        var program = new Parser(new Lexer("{ print }").lex()).Parse();
+        var in = new Interpreter(program, Optional.empty());
+        var written = new StringWriter();
+        in.setOutput(new Output(new BufferedWriter(written), false));
+        // a reader that never has anything ready, like a terminal, so what the first
+        // record printed has to be written before it reads again
+        var seen = new ArrayList<String>();
+        in.setInput(new Reader() {
+            private int reads = 0;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                seen.add(written.toString());
+                if (reads++ > 0) {
+                    return -1;
+                }
+                var text = "first\n";
+                text.getChars(0, text.length(), cbuf, off);
+                return text.length();
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        in.InterpretProgram();
+        assertEquals(List.of("", "first\n"), seen);
+    }
+
+    @Test
+    public void LongRecords() {
+        // records longer than the read buffer have to be stitched together
+        var longRecord = "ab ".repeat(10000);
+        var in = init(longRecord + "\n\nlast");
+        var data = new InterpreterDataType();
+        assertEquals(callGetLine(in, data), true);
+        assertEquals(data.getContents(), longRecord);
+        assertEquals(callGetLine(in, data), true);
+        assertEquals(data.getContents(), "");
+        assertEquals(callGetLine(in, data), true);
+        assertEquals(data.getContents(), "last");
+        assertEquals(callGetLine(in, data), false);
+    }
+
+    @Test
+    public void SplitsLazily() {
+        var in = init("a:b c\nd:e f\n");
+        assertEquals(callGetLine(in), true);
+        // changing FS after the record is read doesnt change how its split, even
+        // though it only gets split once we ask for a field
+        in.getGlobal("FS").setContents(":");
+        assertEquals(in.getRecord().Get(2).getContents(), "c");
+        assertEquals(in.getGlobal("NF").getContents(), "2");
+        assertEquals(callGetLine(in), true);
+        assertEquals(in.getGlobal("NF").getContents(), "2");
+        assertEquals(in.getRecord().Get(2).getContents(), "e f");
+        // setting NF changes the record
+        in.getGlobal("NF").setContents("1");
+        assertEquals(in.getRecord().Get(0).getContents(), "d");
+    }
+
+    @Test
+    public void NegativeNumberOfFields() throws Exception {
+        var program = new Parser(new Lexer("{ NF = -1; $3 = \"x\" }").lex()).Parse();
+        var in = new Interpreter(program, Optional.empty());
+        in.setInput("a b c\n");
+        assertThrows(AwkRuntimeError.NegativeNumberOfFieldsError.class, () -> in.InterpretProgram());
+    }
+
+    @Test
+    public void RebuildsWithOFS() {
+        var in = init("a b c\n");
+        assertEquals(callGetLine(in), true);
+        in.getGlobal("OFS").setContents("-");
+        in.getRecord().Get(2).setContents("x");
+        in.getRecord().Get(5).setContents("y");
+        // $0 is only joined back together when its read
+        assertEquals(in.getRecord().Get(0).getContents(), "a-x-c--y");
+        assertEquals(in.getGlobal("NF").getContents(), "5");
+    }
+
+    @Test
+    public void FieldLimit() throws Exception {
+        // only $2 is used so records only get split up to the second field
+        var program = new Parser(new Lexer("{ second = second $2 }").lex()).Parse();
+        var in = new Interpreter(program, Optional.empty());
+        in.setInput("a b c d\ne f g\n");
+        in.InterpretProgram();
+        assertEquals(in.getGlobal("second").getContents(), "bf");
+        // but using NF means we need all of them
+        program = new Parser(new Lexer("{ last = last $NF }\nEND { fields = NF }").lex()).Parse();
+        in = new Interpreter(program, Optional.empty());
+        in.setInput("a b c d\ne f g\n");
+        in.InterpretProgram();
+        assertEquals(in.getGlobal("last").getContents(), "dg");
+        assertEquals(in.getGlobal("fields").getContents(), "3");
+    }
+
+    private String tempFile(String contents) throws IOException {
+        Path file = Files.createTempFile("awk", ".txt");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, contents);
+        return file.toString();
+    }
+
+    @Test
+    public void MultipleFiles() throws Exception {
+        var first = tempFile("a\nb\n");
+        var second = tempFile("c\n");
+        var in = new Interpreter(new ProgramNode(), List.of(first, second));
+        assertEquals(callGetLine(in), true);
+        assertEquals(in.getGlobal("FILENAME").getContents(), first);
+        assertEquals(callGetLine(in), true);
+        assertEquals(in.getGlobal("FNR").getContents(), "2");
+        assertEquals(callGetLine(in), true);
+        assertEquals(in.getRecord().Get(0).getContents(), "c");
+        assertEquals(in.getGlobal("FILENAME").getContents(), second);
+        assertEquals(in.getGlobal("FNR").getContents(), "1");
+        assertEquals(in.getGlobal("NR").getContents(), "3");
+        assertEquals(callGetLine(in), false);
+    }
+
+    @Test
+    public void MissingFirstFile() throws Exception {
+        var missing = Path.of(tempFile("")).resolveSibling("missing-awk-input.txt").toString();
+        var program = new Parser(new Lexer("BEGIN { began = 1 } { n++ }").lex()).Parse();
+        // the file is only opened once a record is needed, so BEGIN still runs
+        var in = new Interpreter(program, List.of(missing, tempFile("a\n")));
+        var error = assertThrows(AwkRuntimeError.InputError.class, () -> in.InterpretProgram());
+        assertEquals("Cannot open input " + missing + ": no such file", error.message());
+        assertEquals("1", in.getGlobal("began").getContents());
+    }
+
+    @Test
+    public void NextFile() throws Exception {
+        var first = tempFile("a\nb\nc\n");
+        var second = tempFile("d\ne\n");
+        var program = new Parser(new Lexer("{ seen = seen $0 }\nFNR == 1 { nextfile }").lex()).Parse();
+        var in = new Interpreter(program, List.of(first, second));
+        in.InterpretProgram();
+        assertEquals(in.getGlobal("seen").getContents(), "ad");
+        assertEquals(in.getGlobal("NR").getContents(), "2");
+    }
+
+    @Test
+    public void MappedFiles() throws Exception {
+        var contents = "short\n" + "a long record ".repeat(10) + "\n\nh\u00e9llo w\u00f6rld\nlast";
+        var file = Path.of(tempFile(contents));
+        var newline = new RecordSeparator("\n");
+        // tiny windows so records end right at the end of one, and dont fit in one
+        for (int window : new int[] { 1, 6, 7, 16, 1 << 20 }) {
+            var reader = new MappedRecordReader(file, window);
+            var records = new ArrayList<String>();
+            for (var record = reader.readRecord(newline); record.isPresent(); record = reader.readRecord(newline)) {
+                records.add(record.get().toString());
+            }
+            reader.close();
+            assertEquals(List.of(contents.split("\n", -1)), records);
+        }
+        // a file that ends with a newline doesnt have an empty record after it
+        var reader = new MappedRecordReader(Path.of(tempFile("a\nb\n")), 2);
+        assertEquals("a", reader.readRecord(newline).get().toString());
+        assertEquals("b", reader.readRecord(newline).get().toString());
+        assertEquals(false, reader.readRecord(newline).isPresent());
+        reader.close();
+        reader = new MappedRecordReader(Path.of(tempFile("")));
+        assertEquals(false, reader.readRecord(newline).isPresent());
+        reader.close();
+    }
+
+    @Test
+    public void RecordBytes() throws Exception {
+        var file = tempFile("a b\nc d\nh\u00e9 x\n");
+        var in = new Interpreter(new ProgramNode(), List.of(file));
+        assertEquals(callGetLine(in), true);
+        assertEquals(in.getRecord().Get(1).getContents(), "a");
+        // the next record reuses the bytes of this one, which $0 and $2 are still
+        // part of
+        var data = new InterpreterDataType();
+        assertEquals(callGetLine(in, data), true);
+        assertEquals(data.getContents(), "c d");
+        assertEquals(in.getRecord().Get(0).getContents(), "a b");
+        assertEquals(in.getRecord().Get(2).getContents(), "b");
+        // comparing, matching and printing use the bytes
+        var program = new Parser(new Lexer("$1 == \"c\" { print $2 }\n$0 ~ `h. .*` { print; print ($1 > \"h\") }")
+                .lex()).Parse();
+        in = new Interpreter(program, List.of(file));
+        var written = new StringWriter();
+        in.setOutput(new Output(written, false));
+        in.InterpretProgram();
+        assertEquals("d\nh\u00e9 x\n1\n", written.toString());
+    }
+
+    private List<String> records(RecordSource reader, RecordSeparator separator) throws IOException {
+        var records = new ArrayList<String>();
+        for (var record = reader.readRecord(separator); record.isPresent(); record = reader.readRecord(separator)) {
+            records.add(record.get() + "|" + reader.getTerminator());
+        }
+        return records;
+    }
+
+    @Test
+    public void RecordSeparators() throws Exception {
+        var input = "\n\na;b\nc\n\n\n12d\0e3\n";
+        var expected = Map.of(
+                ";", List.of("\n\na|;", "b\nc\n\n\n12d\0e3\n|"),
+                "\\0", List.of("\n\na;b\nc\n\n\n12d|\0", "e3\n|"),
+                "", List.of("a;b\nc|\n\n\n", "12d\0e3|\n"),
+                "[0-9]+", List.of("\n\na;b\nc\n\n\n|12", "d\0e|3", "\n|"),
+                "\n+", List.of("|\n\n", "a;b|\n", "c|\n\n\n", "12d\0e3|\n"));
+        var file = Path.of(tempFile(input));
+        for (var test : expected.entrySet()) {
+            var separator = new RecordSeparator(test.getKey());
+            // tiny buffers so separators are split between reads
+            assertEquals(test.getKey(), test.getValue(),
+                    records(new RecordReader(new StringReader(input), 2), separator));
+            assertEquals(test.getKey(), test.getValue(), records(new MappedRecordReader(file, 3), separator));
+        }
+        // changing RS part way through a file
+        var reader = new MappedRecordReader(file, 4);
+        assertEquals("\n\na", reader.readRecord(new RecordSeparator(";")).get().toString());
+        assertEquals("b", reader.readRecord(new RecordSeparator("\n")).get().toString());
+        assertEquals("c", reader.readRecord(new RecordSeparator("")).get().toString());
+        assertEquals(List.of("12d|\0", "e3\n|"), records(reader, new RecordSeparator("\\x00")));
+        reader.close();
+        // the bytes after the separator dont make the record not ascii
+        reader = new MappedRecordReader(Path.of(tempFile("abcdefg;\u00e9 abcdefghijklmnop")), 1 << 20);
+        assertEquals(true, reader.readRecord(new RecordSeparator(";")).get() instanceof RecordBytes);
+        assertEquals("\u00e9 abcdefghijklmnop", reader.readRecord(new RecordSeparator(";")).get());
+        reader.close();
+    }
+
+    @Test
+    public void RecordSeparatorVariables() throws Exception {
+        var program = new Parser(new Lexer("BEGIN { RS = \"\" } { print NF \":\" $2 \":\" length(RT) }").lex())
+                .Parse();
+        var in = new Interpreter(program, Optional.empty());
+        in.setInput("a b\nc\n\n\nd\ne f\n");
+        var written = new StringWriter();
+        in.setOutput(new Output(written, false));
+        in.InterpretProgram();
+        assertEquals("3:b:3\n3:e:1\n", written.toString());
+        // newlines still separate fields in paragraph mode when FS is something else
+        program = new Parser(new Lexer("BEGIN { RS = \"\"; FS = \":\" } { print NF, $2 }").lex()).Parse();
+        in = new Interpreter(program, Optional.empty());
+        in.setInput("a:b\nc\n\nd\ne:f");
+        written = new StringWriter();
+        in.setOutput(new Output(written, false));
+        in.InterpretProgram();
+        assertEquals("3 b\n3 e\n", written.toString());
+    }
+
+    @Test
+    public void Stdin() throws Exception {
+        var stdin = System.in;
+        try {
+            System.setIn(new ByteArrayInputStream("from\nstdin".getBytes()));
+            // no files means read from stdin
+            var in = new Interpreter(new ProgramNode(), List.of());
+            assertEquals(callGetLine(in), true);
+            assertEquals(in.getRecord().Get(0).getContents(), "from");
+            System.setIn(new ByteArrayInputStream("dash\n".getBytes()));
+            // so does -
+            var file = tempFile("file\n");
+            in = new Interpreter(new ProgramNode(), List.of(file, "-"));
+            assertEquals(callGetLine(in), true);
+            assertEquals(callGetLine(in), true);
+            assertEquals(in.getRecord().Get(0).getContents(), "dash");
+            assertEquals(callGetLine(in), false);
+        } finally {
+            System.setIn(stdin);
+        }
+    }
 }
@@ -0,0 +1,69 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class NumberParserTests {
+    public void assertNumber(String value, double expected) {
+        assertEquals(value, true, NumberParser.isNumber(value));
+        assertEquals(value, expected, NumberParser.parse(value), 0);
+    }
+
+    public void assertNotNumber(String value) {
+        assertEquals(value, false, NumberParser.isNumber(value));
+    }
+
+    @Test
+    public void Numbers() {
+        assertNumber("12", 12);
+        assertNumber(" -1.5\t", -1.5);
+        assertNumber("+.5", 0.5);
+        assertNumber("3.", 3);
+        assertNumber("1e3", 1000);
+        assertNumber("2.5E-1", 0.25);
+        // only blanks is 0
+        assertNumber("", 0);
+        assertNumber("  ", 0);
+        assertNumber("-inf", Double.NEGATIVE_INFINITY);
+        assertNumber("+NaN", Double.NaN);
+    }
+
+    @Test
+    public void NotNumbers() {
+        assertNotNumber("GET");
+        assertNotNumber("1a");
+        assertNotNumber(".");
+        assertNotNumber("-");
+        assertNotNumber("1e");
+        assertNotNumber("1 2");
+        // java would parse these but awk doesnt
+        assertNotNumber("1f");
+        assertNotNumber("Infinity");
+        assertNotNumber("inf");
+        assertNotNumber("0x10");
+    }
+
+    @Test
+    public void Ranges() {
+        var record = "GET 200 1.25e2 x";
+        assertEquals(true, NumberParser.isNumber(record, 3, 8));
+        assertEquals(200, NumberParser.parse(record, 3, 8), 0);
+        assertEquals(125, NumberParser.parse(record, 8, 14), 0);
+        assertEquals(false, NumberParser.isNumber(record, 0, 3));
+        assertEquals(false, NumberParser.isNumber(record, 8, 16));
+    }
+
+    @Test
+    public void SameAsJava() {
+        // the fast path has to give exactly what Double.parseDouble would
+        for (var value : new String[] { "0.1", "0.3", "123456789012345678", "1234567890123456789012", "9007199254740993",
+                "1e22", "1e23", "4.9e-324", "1.7976931348623157e308", "1e400", "-0", "0.000001", "00012.5000",
+                "3.14159265358979323846" }) {
+            assertNumber(value, Double.parseDouble(value));
+        }
+        for (int i = 0; i < 10000; i++) {
+            var value = (UnitTests.rng.nextInt(1000000) + "." + UnitTests.rng.nextInt(1000000)) + "e"
+                    + (UnitTests.rng.nextInt(60) - 30);
+            assertNumber(value, Double.parseDouble(value));
+        }
+    }
+}
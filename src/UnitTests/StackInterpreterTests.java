@@ -0,0 +1,49 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+// runs all the interpreter tests again with the stack engine
+// (GetIDT always uses the tree walker when there is no closure compiler, so only
+// the tests that run whole programs end up running on the stack machine)
+public class StackInterpreterTests extends InterpreterTests {
+    @Override
+    protected Interpreter interpreter(ProgramNode program) {
+        var interpreter = super.interpreter(program);
+        interpreter.setEngine(Interpreter.Engine.Stack);
+        return interpreter;
+    }
+
+    private String run(ProgramNode program) {
+        var written = new StringWriter();
+        var interpreter = interpreter(program);
+        interpreter.setOutput(new Output(written, false));
+        interpreter.InterpretProgram();
+        return written.toString();
+    }
+
+    @Test
+    public void testStackMachine() throws Exception {
+        var program = new Parser(new Lexer("""
+                function fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2) }
+                function first(a,   k) { for (k in a) return k }
+                BEGIN {
+                    for (i = 0; i < 10; i++) s += i % 3 ^ 2
+                    arr[0] = 0; arr[1] = 1; delete arr[0]
+                    do { t++ } while (t < 3)
+                    x = "abc"
+                    print s, fib(15), first(arr, 0), t, 1 in arr, 0 in arr, x ~ `a.c`, x !~ `b`, x "d", -s, (s > 9 && !0) ? "y" : "n"
+                }""").lex()).Parse();
+        assertEquals("36 610 0 3 1 1 1 1 abcd -36 y\n", run(program));
+    }
+
+    @Test
+    public void testDeepRecursion() throws Exception {
+        // deep enough to overflow the java stack if each call recursed in java
+        var program = new Parser(new Lexer("""
+                function depth(n) { if (n == 0) return 0; return depth(n - 1) + 1 }
+                BEGIN { print depth(200000) }""").lex()).Parse();
+        assertEquals("200000\n", run(program));
+    }
+}